@@ -0,0 +1,57 @@
+package com.example.caissa_bot_backend;
+
+import com.example.caissa_bot_backend.board_representation.Bitboard;
+import com.example.caissa_bot_backend.board_representation.Move;
+
+// Fixed-depth search of a fixed set of positions on one thread, with a fresh
+// transposition table for each. The node counts are deterministic, so they can be
+// compared between two versions of the search; the times are only indicative.
+public class Bench {
+    static final String[] benchPositions = {
+            // Starting position
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            // Kiwipete
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            // Perft position 6, a quiet middlegame
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            // Perft position 3, a rook endgame
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            // Queen's gambit declined
+            "r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP2BPPP/R2QKB1R w KQ - 0 8",
+            // Endgame with a pawn chain
+            "2r3k1/pp3ppp/4p3/3pP3/3P1P2/P4N2/1P4PP/6K1 w - - 0 25",
+    };
+
+    public static void main(String[] args) {
+        int depth = 7;
+        if (args.length > 0) {
+            try {
+                depth = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid depth argument, using default depth of 7.");
+            }
+        }
+
+        Engine.setThreads(1);
+        long totalNodes = 0;
+        long totalTime = 0;
+
+        System.out.println("\n");
+        for (String fen : benchPositions) {
+            Engine.setHashSize(Engine.DEFAULT_HASH_SIZE_MB);
+            Bitboard board = new Bitboard();
+            board.init(fen);
+            Engine engine = new Engine(board, depth);
+
+            long start = System.currentTimeMillis();
+            Move best = engine.generateBestMove();
+            long time = System.currentTimeMillis() - start;
+
+            totalNodes += engine.getNodes();
+            totalTime += time;
+            System.out.printf("%10d nodes %7d ms  %-24s %s\n", engine.getNodes(), time, best, fen);
+        }
+        System.out.printf("\nDepth %d: %d nodes in %d ms (%d nps)\n", depth, totalNodes, totalTime,
+                totalTime > 0 ? totalNodes * 1000 / totalTime : 0);
+    }
+}
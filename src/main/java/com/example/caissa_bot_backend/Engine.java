@@ -2,18 +2,51 @@ package com.example.caissa_bot_backend;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.example.caissa_bot_backend.board_representation.Bitboard;
 import com.example.caissa_bot_backend.board_representation.Move;
-import com.example.caissa_bot_backend.engine.SearchTask;
+import com.example.caissa_bot_backend.board_representation.MoveList;
+import com.example.caissa_bot_backend.board_representation.PackedMove;
+import com.example.caissa_bot_backend.engine.EvalCache;
+import com.example.caissa_bot_backend.engine.Search;
+import com.example.caissa_bot_backend.engine.SearchControl;
+import com.example.caissa_bot_backend.engine.SearchLimits;
+import com.example.caissa_bot_backend.engine.TranspositionTable;
 
 public class Engine {
+    public static final int DEFAULT_HASH_SIZE_MB = 64;
+
+    // One global table and evaluation cache, shared by every search so that
+    // positions seen in earlier requests of the same game are still known. Both
+    // are lock-free and safe for concurrent requests, which then share (and
+    // compete for) the entries.
+    private static TranspositionTable transpositionTable = new TranspositionTable(DEFAULT_HASH_SIZE_MB);
+    private static final EvalCache evalCache = new EvalCache(EvalCache.DEFAULT_SIZE);
+    private static int threads = 1;
+    // Helper threads are kept between searches rather than started per request
+    private static final ExecutorService helperPool = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "search-helper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private Bitboard bitboard;
-    private int depth;
+    private SearchLimits limits;
+    private int[] principalVariation = new int[0];
+    private long nodes = 0;
+    private double evalCacheHitRate = 0;
 
     public Engine(Bitboard bitboard, int depth) {
+        this(bitboard, SearchLimits.depth(depth));
+    }
+
+    public Engine(Bitboard bitboard, SearchLimits limits) {
         this.bitboard = bitboard;
-        this.depth = depth;
+        this.limits = limits;
     }
 
     public static void main(String... args) {
@@ -34,45 +67,102 @@ public class Engine {
         board.run();
     }
 
+    public static void setHashSize(int sizeMb) {
+        transpositionTable = new TranspositionTable(sizeMb);
+    }
+
+    // Number of search threads, or 0 for one per available processor
+    public static void setThreads(int count) {
+        threads = count > 0 ? count : Runtime.getRuntime().availableProcessors();
+    }
+
     public static Move generateBestMove(String fen, int depth) {
+        return generateBestMove(fen, SearchLimits.depth(depth));
+    }
+
+    public static Move generateBestMove(String fen, SearchLimits limits) {
         Bitboard board = new Bitboard();
         board.init(fen);
-        Engine engine = new Engine(board, depth);
+        Engine engine = new Engine(board, limits);
         return engine.generateBestMove();
     }
 
+    // Lazy SMP: the main thread and threads - 1 helpers all run iterative
+    // deepening on their own copy of the board, sharing the transposition table.
+    // The main thread stops the helpers once it is done.
     public Move generateBestMove() {
-        return rootNegaMax();
-    }
-
-    private Move rootNegaMax() {
-        ArrayList<Move> legalMoves = bitboard.generateLegalMoves();
+        MoveList legalMoves = bitboard.generateLegalMoves(new MoveList());
         if (legalMoves.isEmpty())
             return null;
 
-        Move bestMove = null;
-        int bestScore = Integer.MIN_VALUE;
+        SearchControl control = new SearchControl(limits);
+        TranspositionTable tt = transpositionTable;
+        tt.newSearch();
+        int maxDepth = Math.min(limits.depth, SearchLimits.MAX_DEPTH);
 
-        List<SearchTask> tasks = new ArrayList<>();
+        Search[] searches = new Search[threads];
+        for (int i = 0; i < searches.length; i++)
+            searches[i] = new Search(control, tt, evalCache, i);
 
-        for (Move move : legalMoves) {
+        List<Future<?>> helpers = new ArrayList<>(searches.length - 1);
+        for (int i = 1; i < searches.length; i++) {
+            Search helper = searches[i];
             Bitboard copy = bitboard.copy();
-            copy.makeMove(move);
-            SearchTask task = new SearchTask(copy, depth - 1, Integer.MIN_VALUE,
-                    Integer.MAX_VALUE);
-            task.fork();
-            tasks.add(task);
+            helpers.add(helperPool.submit(() -> helper.iterativeDeepening(copy, maxDepth)));
         }
 
-        for (int i = 0; i < tasks.size(); i++) {
-            int score = -tasks.get(i).join();
-            if (score > bestScore) {
-                bestScore = score;
-                bestMove = legalMoves.get(i);
+        searches[0].iterativeDeepening(bitboard.copy(), maxDepth);
+        control.stop();
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Search helper failed", e.getCause());
+            }
+        }
+        nodes = control.nodes();
+        long evalProbes = 0;
+        long evalHits = 0;
+        for (Search search : searches) {
+            evalProbes += search.getEvalProbes();
+            evalHits += search.getEvalHits();
+        }
+        evalCacheHitRate = evalProbes == 0 ? 0 : (double) evalHits / evalProbes;
+
+        // Play the move of the deepest completed iteration, the main thread's on a
+        // tie. Something legal even if not even depth 1 finished.
+        int bestMove = legalMoves.get(0);
+        int bestDepth = 0;
+        for (Search search : searches) {
+            if (search.getCompletedDepth() > bestDepth) {
+                bestDepth = search.getCompletedDepth();
+                bestMove = search.getBestMove();
+                principalVariation = search.getPrincipalVariation();
             }
         }
 
-        return bestMove;
+        return PackedMove.toMove(bestMove);
+    }
+
+    // Nodes searched by all threads during the last generateBestMove
+    public long getNodes() {
+        return nodes;
+    }
+
+    // Share of static evaluations found in the cache during the last
+    // generateBestMove
+    public double getEvalCacheHitRate() {
+        return evalCacheHitRate;
+    }
+
+    // Line the engine expects after its last generateBestMove, best move first
+    public List<Move> getPrincipalVariation() {
+        List<Move> moves = new ArrayList<>(principalVariation.length);
+        for (int move : principalVariation)
+            moves.add(PackedMove.toMove(move));
+        return moves;
     }
 
 }
@@ -3,7 +3,8 @@ package com.example.caissa_bot_backend;
 import java.util.*;
 
 import com.example.caissa_bot_backend.board_representation.Bitboard;
-import com.example.caissa_bot_backend.board_representation.Move;
+import com.example.caissa_bot_backend.board_representation.MoveList;
+import com.example.caissa_bot_backend.board_representation.PackedMove;
 import com.example.caissa_bot_backend.utils.Timer;
 
 public class Perft {
@@ -185,8 +186,10 @@ public class Perft {
         }
     }
 
-    static ArrayList<Move> moveHistory = new ArrayList<>();
+    static ArrayList<Integer> moveHistory = new ArrayList<>();
     static long prevCounter = 0L;
+    // One move buffer per remaining depth so the recursion does not allocate
+    static MoveList[] moveLists = new MoveList[0];
 
     public static void perft(Bitboard board, int depth, PerftCounters counters) {
         if (depth == 0) {
@@ -194,19 +197,28 @@ public class Perft {
             return;
         }
 
+        if (moveLists.length <= depth) {
+            moveLists = Arrays.copyOf(moveLists, depth + 1);
+            for (int i = 0; i <= depth; i++) {
+                if (moveLists[i] == null)
+                    moveLists[i] = new MoveList();
+            }
+        }
+
         moveGenTimer.start();
-        ArrayList<Move> legalMoves = board.generateLegalMoves();
+        MoveList legalMoves = board.generateLegalMoves(moveLists[depth]);
         moveGenTimer.stop();
 
-        for (Move move : legalMoves) {
+        for (int i = 0; i < legalMoves.size(); i++) {
+            int move = legalMoves.get(i);
             moveExecTimer.start();
             board.makeMove(move);
             moveHistory.add(move);
 
-            boolean isCapture = move.isCapture();
-            boolean isEnPassant = move.isEnPassant();
-            boolean isCastling = move.isCastling();
-            boolean isPromotion = move.isPromotion();
+            boolean isCapture = PackedMove.isCapture(move);
+            boolean isEnPassant = PackedMove.isEnPassant(move);
+            boolean isCastling = PackedMove.isCastling(move);
+            boolean isPromotion = PackedMove.isPromotion(move);
             boolean isCheck = board.isCheck();
             boolean isCheckmate = board.isCheckmate();
             if (depth == 1) {
@@ -0,0 +1,89 @@
+package com.example.caissa_bot_backend;
+
+import com.example.caissa_bot_backend.board_representation.Bitboard;
+import com.example.caissa_bot_backend.board_representation.MoveList;
+import com.example.caissa_bot_backend.board_representation.PackedMove;
+import com.example.caissa_bot_backend.engine.SEE;
+
+// Static exchange evaluation on positions whose swap value is worked out by hand,
+// with the middlegame piece values (P 82, N 337, B 365, R 477, Q 1025)
+public class SeeCheck {
+    public static final String ANSI_RESET = "\u001B[0m";
+    public static final String ANSI_GREEN = "\u001B[32m";
+    public static final String ANSI_RED = "\u001B[31m";
+
+    // FEN, move (from, to and promotion piece), expected swap value
+    static final Object[][] knownSee = {
+            // Undefended pawn
+            { "1k1r4/1pp4p/p7/4p3/8/P5P1/1PP4P/2K1R3 w - - 0 1", "e1e5", 82 },
+            // Knight takes a pawn and is recaptured by the bishop
+            { "1k1r3q/1ppn3p/p4b2/4p3/8/P2N2P1/1PP1R1BP/2K1Q3 w - - 0 1", "d3e5", -255 },
+            // Queen takes a pawn defended by a pawn
+            { "4k3/8/4p3/3p4/8/8/8/3QK3 w - - 0 1", "d1d5", -943 },
+            // Queen moves to a square attacked by a pawn
+            { "4k3/8/4p3/8/8/8/8/3QK3 w - - 0 1", "d1d5", -1025 },
+            // Doubled rooks and a queen behind them against two rooks: x-rays on both sides
+            { "3rk3/3r4/8/3p4/8/3R4/3R4/3QK3 w - - 0 1", "d3d5", 82 },
+            // Same with one white rook less: the defence wins the exchange
+            { "3rk3/3r4/8/3p4/8/8/3R4/3QK3 w - - 0 1", "d2d5", 82 - 477 },
+            // Promotion on a free square
+            { "4k3/P7/8/8/8/8/8/4K3 w - - 0 1", "a7a8q", 943 },
+            // Promotion on a square the rook defends
+            { "1r2k3/P7/8/8/8/8/8/4K3 w - - 0 1", "a7a8q", -82 },
+            // Capturing promotion
+            { "1r2k3/P7/8/8/8/8/8/4K3 w - - 0 1", "a7b8q", 477 + 943 },
+            // En passant
+            { "4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1", "e5d6", 82 },
+            // Black to move: bishop takes a knight defended by a pawn
+            { "4k3/8/8/2b5/8/4N3/5P2/4K3 b - - 0 1", "c5e3", 337 - 365 },
+    };
+
+    public static void main(String[] args) {
+        SEE see = new SEE();
+        Bitboard board = new Bitboard();
+        int failures = 0;
+
+        System.out.println("\n");
+        for (Object[] test : knownSee) {
+            String fen = (String) test[0];
+            String uci = (String) test[1];
+            int expected = (Integer) test[2];
+
+            board.init(fen);
+            int move = findMove(board, uci);
+            if (move == PackedMove.NONE) {
+                System.out.println(ANSI_RED + uci + " is not legal in " + fen + ANSI_RESET);
+                failures++;
+                continue;
+            }
+
+            int value = see.see(board, move);
+            if (value != expected)
+                failures++;
+            String color = value == expected ? ANSI_GREEN : ANSI_RED;
+            System.out.printf(color + "%-6s %6d/%-6d" + ANSI_RESET + " %s\n", uci, value, expected, fen);
+        }
+        System.out.println("\n" + (knownSee.length - failures) + "/" + knownSee.length + " positions passed");
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    private static int findMove(Bitboard board, String uci) {
+        int from = square(uci.substring(0, 2));
+        int to = square(uci.substring(2, 4));
+        MoveList moves = board.generateLegalMoves(new MoveList());
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            if (PackedMove.from(move) != from || PackedMove.to(move) != to)
+                continue;
+            if (uci.length() == 4 || "pnbrqk".charAt(PackedMove.promotion(move) % 6) == uci.charAt(4))
+                return move;
+        }
+        return PackedMove.NONE;
+    }
+
+    // Squares run from a8 = 0 to h1 = 63
+    private static int square(String name) {
+        return (8 - (name.charAt(1) - '0')) * 8 + (name.charAt(0) - 'a');
+    }
+}
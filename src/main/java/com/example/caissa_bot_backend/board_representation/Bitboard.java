@@ -1,10 +1,11 @@
 package com.example.caissa_bot_backend.board_representation;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Scanner;
-import java.util.Stack;
 
 import com.example.caissa_bot_backend.Engine;
+import com.example.caissa_bot_backend.engine.Evaluate;
 import com.example.caissa_bot_backend.move_gen.AttacksGen;
 import com.example.caissa_bot_backend.move_gen.MagicBitboards;
 import com.example.caissa_bot_backend.move_gen.MoveGen;
@@ -23,6 +24,8 @@ public class Bitboard {
 
     public long[] pieces = new long[13];
     public long whiteOccupancy, blackOccupancy, occupancy, emptyOccupancy;
+    // Piece on each square (-1 when empty), kept in sync with the bitboards
+    private byte[] mailbox = new byte[64];
 
     public boolean canShortCastleWhite;
     public boolean canLongCastleWhite;
@@ -34,16 +37,39 @@ public class Bitboard {
     // Metadata
     private boolean isWhite;
     private int halfMovesSinceReset = 0;
+    // Plies played since the last null move (or since init), the furthest back
+    // a repetition can be. Positions before a null move are not repeated by
+    // real play.
+    private int pliesSinceNull = 0;
     private int fullMoves = 1;
-    private Zobrist zobrist;
+    private long hash;
+    // Hash of the pawns alone, see Zobrist.pawnHash
+    private long pawnHash;
+    // Sums of Evaluate's material and square values over all pieces (middlegame
+    // and endgame, from white's point of view) and the game phase, kept up to
+    // date by addPiece and removePiece
+    private int mgScore, egScore, gamePhase;
     private boolean isGameOver;
-    private Stack<Bitboard> gameHistory = new Stack<>();
+    private final MoveGen moveGen = new MoveGen(this);
+    // Buffer for the internal legal move checks (checkmate, stalemate)
+    private final MoveList scratchMoves = new MoveList();
+
+    // Undo records, one per ply played on this board. Entries are allocated once
+    // and reused so that making a move does not allocate.
+    private UndoInfo[] history = new UndoInfo[256];
+    private int historySize = 0;
+    // Hash of the position before each of those plies, used for repetition checks
+    private long[] keyHistory = new long[256];
 
     // For engine play
     public boolean isWhiteBot = false;
     public boolean isBlackBot = false;
     public int engineDepth = 5;
 
+    // When set, every make/undo checks the incrementally updated hash and mailbox
+    // against a full recomputation. Enable with -Dcaissa.verifyState=true.
+    public static boolean verifyState = Boolean.getBoolean("caissa.verifyState");
+
     public void init() {
         init("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
     }
@@ -53,6 +79,8 @@ public class Bitboard {
 
         pieces = parser.pieces;
         updateOccupancy();
+        fillMailbox();
+        initScores();
 
         isWhite = parser.isWhite;
 
@@ -64,9 +92,12 @@ public class Bitboard {
         enPassantSquare = parser.enPassantSquare;
 
         halfMovesSinceReset = parser.halfMovesSinceReset;
+        pliesSinceNull = 0;
         fullMoves = parser.fullMoves;
 
-        zobrist = new Zobrist();
+        hash = Zobrist.zobristHash(this, isWhite);
+        pawnHash = Zobrist.pawnHash(this);
+        historySize = 0;
     }
 
     public void run() {
@@ -75,9 +106,6 @@ public class Bitboard {
         while (!isGameOver) {
             System.out.println(this);
 
-            // Mark the current position as visited by adding to zobrist map
-            zobrist.zobristHash(this, isWhite);
-
             ArrayList<Move> legalMoves = generateLegalMoves();
 
             if (legalMoves.isEmpty()) {
@@ -116,8 +144,10 @@ public class Bitboard {
                 selectedMove = engine.generateBestMove();
                 long finish = System.currentTimeMillis();
                 float seconds = (float) (finish - start) / 1000;
-                System.out.println("Thinking for " + (seconds) + " seconds");
+                System.out.println("Thinking for " + (seconds) + " seconds, " + engine.getNodes() + " nodes, "
+                        + Math.round(engine.getEvalCacheHitRate() * 100) + "% eval cache hits");
                 System.out.println("Bot chose: " + selectedMove);
+                System.out.println("Expected line: " + engine.getPrincipalVariation());
             } else {
                 String moveString = scanner.nextLine();
                 Move move = new Move(moveString, isWhite);
@@ -148,37 +178,81 @@ public class Bitboard {
         return false;
     }
 
+    // Legal moves as Move objects, for the controller and the CLI
     public ArrayList<Move> generateLegalMoves() {
-        MoveGen moveGen = new MoveGen(this);
-        ArrayList<Move> pseudoMoves = moveGen.generatePseudoLegalMoves(isWhite);
-        ArrayList<Move> legalMoves = new ArrayList<>();
-
-        for (Move move : pseudoMoves) {
-            Bitboard boardCopy = this.copy();
-            boardCopy.makeMove(move);
-            if (!boardCopy.isKingInCheck(isWhite))
-                legalMoves.add(move);
-        }
-
+        MoveList moves = generateLegalMoves(new MoveList());
+        ArrayList<Move> legalMoves = new ArrayList<>(moves.size());
+        for (int i = 0; i < moves.size(); i++)
+            legalMoves.add(PackedMove.toMove(moves.get(i)));
         return legalMoves;
     }
 
+    public MoveList generateLegalMoves(MoveList moves) {
+        return moveGen.generateLegalMoves(isWhite, moves);
+    }
+
+    public MoveList generateCaptures(MoveList moves) {
+        return moveGen.generateCaptures(isWhite, moves);
+    }
+
+    public MoveList generateQuiets(MoveList moves) {
+        return moveGen.generateQuiets(isWhite, moves);
+    }
+
+    public boolean isLegal(int move) {
+        return moveGen.isLegal(isWhite, move);
+    }
+
+    // Pack a move received from outside the engine
+    public int encodeMove(Move move) {
+        if (move.isShortCastling)
+            return PackedMove.encode(isWhite ? 60 : 4, isWhite ? 62 : 6, isWhite ? 5 : 11, -1, -1,
+                    PackedMove.SHORT_CASTLE);
+        if (move.isLongCastling)
+            return PackedMove.encode(isWhite ? 60 : 4, isWhite ? 58 : 2, isWhite ? 5 : 11, -1, -1,
+                    PackedMove.LONG_CASTLE);
+
+        int flags = 0;
+        int capturedPiece = getPieceAt(move.capturedSquare);
+        if (capturedPiece != -1 && move.capturedSquare != move.to)
+            flags |= PackedMove.EN_PASSANT;
+        if ((move.piece == 0 || move.piece == 6) && Math.abs(move.from - move.to) == 16)
+            flags |= PackedMove.DOUBLE_PUSH;
+        return PackedMove.encode(move.from, move.to, move.piece, capturedPiece, move.promotionPiece, flags);
+    }
+
     public void makeMove(Move move) {
-        // Save current state for undoing in the future
-        gameHistory.push(this.copy());
+        makeMove(encodeMove(move));
+    }
+
+    public void makeMove(int move) {
+        // Save the irreversible state for undoing in the future
+        UndoInfo undo = pushUndo();
+        undo.move = move;
+        undo.castlingRights = castlingRights();
+        undo.enPassantSquare = enPassantSquare;
+        undo.halfMovesSinceReset = halfMovesSinceReset;
+        undo.pliesSinceNull = pliesSinceNull;
+        keyHistory[historySize - 1] = hash;
 
         boolean moveCountReset = false;
 
-        if (move.isShortCastling) {
+        // Take the old castling rights and en passant file out of the hash, the new
+        // ones are put back in once the move has been played
+        hash ^= Zobrist.castleKey(undo.castlingRights);
+        if (enPassantSquare != -1)
+            hash ^= Zobrist.enPassantKey(enPassantSquare);
+
+        if (PackedMove.isShortCastle(move)) {
             shortCastle(isWhite);
             enPassantSquare = -1;
-        } else if (move.isLongCastling) {
+        } else if (PackedMove.isLongCastle(move)) {
             longCastle(isWhite);
             enPassantSquare = -1;
         } else {
-            int from = move.from;
-            int to = move.to;
-            int piece = move.piece;
+            int from = PackedMove.from(move);
+            int to = PackedMove.to(move);
+            int piece = PackedMove.piece(move);
 
             if (piece == 0 || piece == 6)
                 moveCountReset = true;
@@ -186,16 +260,16 @@ public class Bitboard {
             removePiece(piece, from);
 
             // handle capture
-            int captureSquare = move.capturedSquare;
-            int capturedPiece = getPieceAt(captureSquare);
+            int capturedPiece = PackedMove.captured(move);
             if (capturedPiece != -1) {
-                removePiece(capturedPiece, captureSquare);
+                removePiece(capturedPiece, PackedMove.capturedSquare(move));
                 moveCountReset = true;
             }
 
             // handle promotion
-            if (move.promotionPiece != -1)
-                addPiece(move.promotionPiece, to);
+            int promotionPiece = PackedMove.promotion(move);
+            if (promotionPiece != -1)
+                addPiece(promotionPiece, to);
             else
                 addPiece(piece, to);
 
@@ -226,12 +300,8 @@ public class Bitboard {
             }
 
             // Check for en passant
-            if (piece == 0 || piece == 6) {
-                if (Math.abs(from - to) == 16) { // double move
-                    enPassantSquare = isWhite ? from - 8 : from + 8; // square behind the double pawn push
-                } else {
-                    enPassantSquare = -1;
-                }
+            if (PackedMove.isDoublePush(move)) {
+                enPassantSquare = isWhite ? from - 8 : from + 8; // square behind the double pawn push
             } else {
                 enPassantSquare = -1;
             }
@@ -241,48 +311,194 @@ public class Bitboard {
 
         if (moveCountReset)
             halfMovesSinceReset = 0;
-
-        halfMovesSinceReset++;
+        else
+            halfMovesSinceReset++;
+        pliesSinceNull++;
         if (!isWhite)
             fullMoves++;
         switchPlayer();
+
+        hash ^= Zobrist.castleKey(castlingRights());
+        if (enPassantSquare != -1)
+            hash ^= Zobrist.enPassantKey(enPassantSquare);
+        hash ^= Zobrist.sideKey();
+
+        if (verifyState)
+            checkState();
     }
 
     public void undoMove() {
-        if (gameHistory.isEmpty()) {
+        if (historySize == 0) {
             System.out.println("No moves to undo");
             return;
         }
-        Bitboard previousBoard = gameHistory.pop();
+        UndoInfo undo = history[--historySize];
+        int move = undo.move;
 
-        // undo pieces
-        // copy pieces
-        for (int i = 0; i < 13; i++) {
-            pieces[i] = previousBoard.pieces[i];
+        switchPlayer();
+        if (!isWhite)
+            fullMoves--;
+
+        if (PackedMove.isShortCastle(move)) {
+            unCastle(isWhite, isWhite ? 62 : 6, isWhite ? 60 : 4, isWhite ? 61 : 5, isWhite ? 63 : 7);
+        } else if (PackedMove.isLongCastle(move)) {
+            unCastle(isWhite, isWhite ? 58 : 2, isWhite ? 60 : 4, isWhite ? 59 : 3, isWhite ? 56 : 0);
+        } else {
+            int piece = PackedMove.piece(move);
+            int promotionPiece = PackedMove.promotion(move);
+            removePiece(promotionPiece != -1 ? promotionPiece : piece, PackedMove.to(move));
+            addPiece(piece, PackedMove.from(move));
+            if (PackedMove.isCapture(move))
+                addPiece(PackedMove.captured(move), PackedMove.capturedSquare(move));
         }
         updateOccupancy();
 
-        whiteOccupancy = previousBoard.whiteOccupancy;
-        blackOccupancy = previousBoard.blackOccupancy;
-        occupancy = previousBoard.occupancy;
-        emptyOccupancy = previousBoard.emptyOccupancy;
+        setCastlingRights(undo.castlingRights);
+        enPassantSquare = undo.enPassantSquare;
+        halfMovesSinceReset = undo.halfMovesSinceReset;
+        pliesSinceNull = undo.pliesSinceNull;
+        hash = keyHistory[historySize];
+
+        if (verifyState)
+            checkState();
+    }
+
+    // Pass the turn without moving, for null move pruning. The fifty-move clock
+    // is left alone, but repetitions are not looked for across a null move.
+    public void makeNullMove() {
+        UndoInfo undo = pushUndo();
+        undo.move = PackedMove.NONE;
+        undo.castlingRights = castlingRights();
+        undo.enPassantSquare = enPassantSquare;
+        undo.halfMovesSinceReset = halfMovesSinceReset;
+        undo.pliesSinceNull = pliesSinceNull;
+        keyHistory[historySize - 1] = hash;
+
+        if (enPassantSquare != -1)
+            hash ^= Zobrist.enPassantKey(enPassantSquare);
+        enPassantSquare = -1;
+        pliesSinceNull = 0;
+        if (!isWhite)
+            fullMoves++;
+        switchPlayer();
+        hash ^= Zobrist.sideKey();
 
-        canShortCastleBlack = previousBoard.canShortCastleBlack;
-        canShortCastleWhite = previousBoard.canShortCastleWhite;
-        canLongCastleBlack = previousBoard.canLongCastleBlack;
-        canLongCastleWhite = previousBoard.canLongCastleWhite;
+        if (verifyState)
+            checkState();
+    }
 
-        enPassantSquare = previousBoard.enPassantSquare;
+    public void undoNullMove() {
+        UndoInfo undo = history[--historySize];
+        switchPlayer();
+        if (!isWhite)
+            fullMoves--;
+        enPassantSquare = undo.enPassantSquare;
+        halfMovesSinceReset = undo.halfMovesSinceReset;
+        pliesSinceNull = undo.pliesSinceNull;
+        hash = keyHistory[historySize];
+
+        if (verifyState)
+            checkState();
+    }
 
-        // undo metadata
-        isWhite = previousBoard.isWhite;
-        halfMovesSinceReset = previousBoard.halfMovesSinceReset;
-        fullMoves = previousBoard.fullMoves;
-        zobrist = previousBoard.zobrist;
-        isGameOver = previousBoard.isGameOver;
-        isWhiteBot = previousBoard.isWhiteBot;
-        isBlackBot = previousBoard.isBlackBot;
-        engineDepth = previousBoard.engineDepth;
+    private void fillMailbox() {
+        Arrays.fill(mailbox, (byte) -1);
+        for (int piece = 0; piece < 12; piece++) {
+            long bb = pieces[piece];
+            while (bb != 0) {
+                mailbox[Long.numberOfTrailingZeros(bb)] = (byte) piece;
+                bb &= bb - 1;
+            }
+        }
+    }
+
+    private void initScores() {
+        mgScore = 0;
+        egScore = 0;
+        gamePhase = 0;
+        for (int piece = 0; piece < 12; piece++) {
+            long bb = pieces[piece];
+            while (bb != 0) {
+                int sq = Long.numberOfTrailingZeros(bb);
+                mgScore += Evaluate.MG_TABLE[piece][sq];
+                egScore += Evaluate.EG_TABLE[piece][sq];
+                gamePhase += Evaluate.gamephaseInc[piece % 6];
+                bb &= bb - 1;
+            }
+        }
+    }
+
+    private void checkState() {
+        long expected = Zobrist.zobristHash(this, isWhite);
+        if (hash != expected)
+            throw new IllegalStateException("Incremental hash " + hash + " does not match " + expected
+                    + " for position\n" + this);
+        long expectedPawns = Zobrist.pawnHash(this);
+        if (pawnHash != expectedPawns)
+            throw new IllegalStateException("Incremental pawn hash " + pawnHash + " does not match "
+                    + expectedPawns + " for position\n" + this);
+
+        int mg = mgScore, eg = egScore, phase = gamePhase;
+        initScores();
+        if (mg != mgScore || eg != egScore || phase != gamePhase)
+            throw new IllegalStateException("Incremental scores " + mg + "/" + eg + "/" + phase + " do not match "
+                    + mgScore + "/" + egScore + "/" + gamePhase + " for position\n" + this);
+
+        for (int sq = 0; sq < 64; sq++) {
+            int piece = -1;
+            for (int i = 0; i < 12; i++) {
+                if ((pieces[i] & (1L << sq)) != 0) {
+                    piece = i;
+                    break;
+                }
+            }
+            if (mailbox[sq] != piece)
+                throw new IllegalStateException("Mailbox has " + mailbox[sq] + " on " + Move.toSquare(sq)
+                        + " but the bitboards have " + piece + " for position\n" + this);
+        }
+    }
+
+    private UndoInfo pushUndo() {
+        if (historySize == history.length) {
+            history = Arrays.copyOf(history, history.length * 2);
+            keyHistory = Arrays.copyOf(keyHistory, keyHistory.length * 2);
+        }
+        UndoInfo undo = history[historySize];
+        if (undo == null) {
+            undo = new UndoInfo();
+            history[historySize] = undo;
+        }
+        historySize++;
+        return undo;
+    }
+
+    private void unCastle(boolean isWhite, int kingTo, int kingFrom, int rookTo, int rookFrom) {
+        int king = isWhite ? 5 : 11;
+        int rook = isWhite ? 3 : 9;
+        removePiece(king, kingTo);
+        removePiece(rook, rookTo);
+        addPiece(king, kingFrom);
+        addPiece(rook, rookFrom);
+    }
+
+    private int castlingRights() {
+        int rights = 0;
+        if (canShortCastleWhite)
+            rights |= 1;
+        if (canLongCastleWhite)
+            rights |= 2;
+        if (canShortCastleBlack)
+            rights |= 4;
+        if (canLongCastleBlack)
+            rights |= 8;
+        return rights;
+    }
+
+    private void setCastlingRights(int rights) {
+        canShortCastleWhite = (rights & 1) != 0;
+        canLongCastleWhite = (rights & 2) != 0;
+        canShortCastleBlack = (rights & 4) != 0;
+        canLongCastleBlack = (rights & 8) != 0;
     }
 
     // Update occupancy after a move and save the hash of the position
@@ -309,14 +525,25 @@ public class Bitboard {
         newBB.canShortCastleBlack = canShortCastleBlack;
         newBB.canLongCastleBlack = canLongCastleBlack;
         newBB.enPassantSquare = enPassantSquare;
+        newBB.mailbox = mailbox.clone();
 
         // Copy metadata
         newBB.isWhite = isWhite;
         newBB.halfMovesSinceReset = halfMovesSinceReset;
+        newBB.pliesSinceNull = pliesSinceNull;
         newBB.fullMoves = fullMoves;
         newBB.isWhiteBot = isWhiteBot;
         newBB.isBlackBot = isBlackBot;
-        newBB.zobrist = zobrist.copy();
+        newBB.hash = hash;
+        newBB.pawnHash = pawnHash;
+        newBB.mgScore = mgScore;
+        newBB.egScore = egScore;
+        newBB.gamePhase = gamePhase;
+        newBB.history = new UndoInfo[history.length];
+        for (int i = 0; i < historySize; i++)
+            newBB.history[i] = history[i].copy();
+        newBB.historySize = historySize;
+        newBB.keyHistory = keyHistory.clone();
         // newBB.gameHistory = gameHistory;
         newBB.isGameOver = isGameOver;
 
@@ -325,21 +552,30 @@ public class Bitboard {
 
     public void removePiece(int piece, int from) {
         pieces[piece] &= ~(1L << from);
+        mailbox[from] = -1;
+        hash ^= Zobrist.pieceKey(piece, from);
+        if (piece == 0 || piece == 6)
+            pawnHash ^= Zobrist.pieceKey(piece, from);
+        mgScore -= Evaluate.MG_TABLE[piece][from];
+        egScore -= Evaluate.EG_TABLE[piece][from];
+        gamePhase -= Evaluate.gamephaseInc[piece % 6];
     }
 
     public void addPiece(int piece, int to) {
         pieces[piece] |= (1L << to);
+        mailbox[to] = (byte) piece;
+        hash ^= Zobrist.pieceKey(piece, to);
+        if (piece == 0 || piece == 6)
+            pawnHash ^= Zobrist.pieceKey(piece, to);
+        mgScore += Evaluate.MG_TABLE[piece][to];
+        egScore += Evaluate.EG_TABLE[piece][to];
+        gamePhase += Evaluate.gamephaseInc[piece % 6];
     }
 
     public int getPieceAt(int to) {
         if (to < 0 || to > 63)
             return -1;
-        for (int i = 0; i < pieces.length - 1; i++) {
-            if ((pieces[i] & (1L << to)) != 0) {
-                return i;
-            }
-        }
-        return -1;
+        return mailbox[to];
     }
 
     public void shortCastle(boolean isWhite) {
@@ -350,11 +586,11 @@ public class Bitboard {
         int rookFrom = isWhite ? 63 : 7;
         int rookTo = isWhite ? 61 : 5;
 
-        pieces[king] &= ~(1L << kingFrom);
-        pieces[rook] &= ~(1L << rookFrom);
+        removePiece(king, kingFrom);
+        removePiece(rook, rookFrom);
 
-        pieces[king] |= (1L << kingTo);
-        pieces[rook] |= (1L << rookTo);
+        addPiece(king, kingTo);
+        addPiece(rook, rookTo);
 
         disableCastle(isWhite);
 
@@ -369,11 +605,11 @@ public class Bitboard {
         int rookFrom = isWhite ? 56 : 0;
         int rookTo = isWhite ? 59 : 3;
 
-        pieces[king] &= ~(1L << kingFrom);
-        pieces[rook] &= ~(1L << rookFrom);
+        removePiece(king, kingFrom);
+        removePiece(rook, rookFrom);
 
-        pieces[king] |= (1L << kingTo);
-        pieces[rook] |= (1L << rookTo);
+        addPiece(king, kingTo);
+        addPiece(rook, rookTo);
 
         disableCastle(isWhite);
 
@@ -391,51 +627,47 @@ public class Bitboard {
     }
 
     public boolean isKingInCheck(boolean isWhite) {
-        int piece = isWhite ? 5 : 11;
-        long king = pieces[piece];
-        int from = Long.numberOfTrailingZeros(king);
-
-        // Check all opponent pieces if they can attack king square
-        long opponentPawns = isWhite ? pieces[6] : pieces[0];
-        long opponentKnights = isWhite ? pieces[7] : pieces[1];
-        long opponentBishops = isWhite ? pieces[8] : pieces[2];
-        long opponentRooks = isWhite ? pieces[9] : pieces[3];
-        long opponentQueens = isWhite ? pieces[10] : pieces[4];
-        long opponentKing = isWhite ? pieces[11] : pieces[5];
-
-        // putting the piece at the king square and attack out to opponent pieces
-        long pawnAttacks = isWhite ? AttacksGen.whitePawnAttacks[from] : AttacksGen.blackPawnAttacks[from];
-        if ((pawnAttacks & opponentPawns) != 0)
-            return true;
+        int king = Long.numberOfTrailingZeros(pieces[isWhite ? 5 : 11]);
+        return isSquareAttacked(king, !isWhite);
+    }
 
-        if ((AttacksGen.knightAttacks[from] & opponentKnights) != 0)
-            return true;
+    public boolean isKingInCheck(boolean isWhite, int from) {
+        return isSquareAttacked(from, !isWhite);
+    }
+
+    // Pieces of both colors attacking a square, with sliders blocked by the given
+    // occupancy
+    public long attackersTo(int square, long occupancy) {
+        long bishopsQueens = pieces[2] | pieces[8] | pieces[4] | pieces[10];
+        long rooksQueens = pieces[3] | pieces[9] | pieces[4] | pieces[10];
+        return (AttacksGen.blackPawnAttacks[square] & pieces[0])
+                | (AttacksGen.whitePawnAttacks[square] & pieces[6])
+                | (AttacksGen.knightAttacks[square] & (pieces[1] | pieces[7]))
+                | (AttacksGen.kingAttacks[square] & (pieces[5] | pieces[11]))
+                | (MagicBitboards.getBishopAttacks(square, occupancy) & bishopsQueens)
+                | (MagicBitboards.getRookAttacks(square, occupancy) & rooksQueens);
+    }
 
-        // Check for bishop and queen's diagional
-        long bishopBlockers = occupancy & MagicBitboards.bishopRelevantOccupancy[from];
-        long bishopAttacks = MagicBitboards.computeBishopAttacks(from, bishopBlockers);
-        if ((bishopAttacks & (opponentBishops | opponentQueens)) != 0)
+    public boolean isSquareAttacked(int square, boolean byWhite) {
+        int offset = byWhite ? 0 : 6;
+        // putting a piece on the square and attack out to the opponent pieces
+        long pawnAttacks = byWhite ? AttacksGen.blackPawnAttacks[square] : AttacksGen.whitePawnAttacks[square];
+        if ((pawnAttacks & pieces[offset]) != 0)
             return true;
 
-        // Check for rook and queen's vertical/horizontal movements
-        long rookBlockers = occupancy & MagicBitboards.rookRelevantOccupancy[from];
-        long rookAttacks = MagicBitboards.computeRookAttacks(from, rookBlockers);
-        if ((rookAttacks & (opponentRooks | opponentQueens)) != 0)
+        if ((AttacksGen.knightAttacks[square] & pieces[offset + 1]) != 0)
             return true;
 
-        if ((AttacksGen.kingAttacks[from] & opponentKing) != 0)
+        if ((AttacksGen.kingAttacks[square] & pieces[offset + 5]) != 0)
             return true;
 
-        return false;
-    }
+        // Check for bishop and queen's diagonal
+        long queens = pieces[offset + 4];
+        if ((MagicBitboards.getBishopAttacks(square, occupancy) & (pieces[offset + 2] | queens)) != 0)
+            return true;
 
-    public boolean isKingInCheck(boolean isWhite, int from) {
-        int king = isWhite ? 5 : 11;
-        long original = pieces[king];
-        pieces[king] = 1L << from;
-        boolean isChecked = isKingInCheck(isWhite);
-        pieces[king] = original;
-        return isChecked;
+        // Check for rook and queen's vertical/horizontal movements
+        return (MagicBitboards.getRookAttacks(square, occupancy) & (pieces[offset + 3] | queens)) != 0;
     }
 
     public boolean isInsufficientMaterial() {
@@ -453,12 +685,32 @@ public class Bitboard {
         return false;
     }
 
+    // Whether the side has anything besides king and pawns. Without, zugzwang is
+    // common and passing the turn is no safe guess of the position's value.
+    public boolean hasNonPawnMaterial(boolean isWhite) {
+        int offset = isWhite ? 0 : 6;
+        return (pieces[offset + 1] | pieces[offset + 2] | pieces[offset + 3] | pieces[offset + 4]) != 0;
+    }
+
     public boolean isFiftyMove() {
         return halfMovesSinceReset >= 100;
     }
 
     public boolean isThreefoldRepetition() {
-        return zobrist.count(this, isWhite) >= 3;
+        return repetitions() >= 2;
+    }
+
+    // Count earlier occurrences of the current position. Only positions since the
+    // last capture or pawn move, and since the last null move, can repeat, and
+    // only with the same side to move.
+    private int repetitions() {
+        int count = 0;
+        int last = Math.max(historySize - Math.min(halfMovesSinceReset, pliesSinceNull), 0);
+        for (int i = historySize - 2; i >= last; i -= 2) {
+            if (keyHistory[i] == hash)
+                count++;
+        }
+        return count;
     }
 
     public boolean isCheck() {
@@ -470,11 +722,11 @@ public class Bitboard {
     }
 
     public boolean isCheckmate() {
-        return isCheck() && generateLegalMoves().isEmpty();
+        return isCheck() && generateLegalMoves(scratchMoves).isEmpty();
     }
 
     public boolean isStalemate() {
-        return !isCheck() && generateLegalMoves().isEmpty();
+        return !isCheck() && generateLegalMoves(scratchMoves).isEmpty();
     }
 
     public boolean isGameOver() {
@@ -486,7 +738,7 @@ public class Bitboard {
     }
 
     public boolean isOccuppied(int sq) {
-        return getPieceAt(sq) != -1;
+        return mailbox[sq] != -1;
     }
 
     public boolean isWhiteToMove() {
@@ -498,7 +750,28 @@ public class Bitboard {
     }
 
     public long zobristHash() {
-        return zobrist.zobristHash(this, isWhite);
+        return hash;
+    }
+
+    public long pawnHash() {
+        return pawnHash;
+    }
+
+    public int mgScore() {
+        return mgScore;
+    }
+
+    public int egScore() {
+        return egScore;
+    }
+
+    public int gamePhase() {
+        return gamePhase;
+    }
+
+    // Move that led to this position, or PackedMove.NONE at the start
+    public int lastMove() {
+        return historySize == 0 ? PackedMove.NONE : history[historySize - 1].move;
     }
 
     @Override
@@ -520,4 +793,22 @@ public class Bitboard {
         board += "\n    a b c d e f g h ";
         return board;
     }
+
+    private static class UndoInfo {
+        int move;
+        int castlingRights;
+        int enPassantSquare;
+        int halfMovesSinceReset;
+        int pliesSinceNull;
+
+        UndoInfo copy() {
+            UndoInfo copy = new UndoInfo();
+            copy.move = move;
+            copy.castlingRights = castlingRights;
+            copy.enPassantSquare = enPassantSquare;
+            copy.halfMovesSinceReset = halfMovesSinceReset;
+            copy.pliesSinceNull = pliesSinceNull;
+            return copy;
+        }
+    }
 }
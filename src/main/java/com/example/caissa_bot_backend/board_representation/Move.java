@@ -1,9 +1,8 @@
 package com.example.caissa_bot_backend.board_representation;
 
-import java.util.HashMap;
-
+// Move as exchanged with the REST controller and the CLI. The engine itself works
+// on moves packed into ints, see PackedMove.
 public class Move {
-    HashMap<String, Integer> piecesMap = new HashMap<String, Integer>();
     public int from;
     public int to;
     public int piece;
@@ -13,8 +12,6 @@ public class Move {
     public boolean isLongCastling = false;
     public boolean isEnPassant = false;
     public int capturedSquare = -1;
-    public String fromString;
-    public String toString;
 
     // Default constructor for serialization
     public Move() {
@@ -22,19 +19,6 @@ public class Move {
     }
 
     public Move(String move, boolean isWhite) {
-        piecesMap.put("WP", 0);
-        piecesMap.put("WN", 1);
-        piecesMap.put("WB", 2);
-        piecesMap.put("WR", 3);
-        piecesMap.put("WQ", 4);
-        piecesMap.put("WK", 5);
-        piecesMap.put("BP", 6);
-        piecesMap.put("BN", 7);
-        piecesMap.put("BB", 8);
-        piecesMap.put("BR", 9);
-        piecesMap.put("BQ", 10);
-        piecesMap.put("BK", 11);
-
         isShortCastling = false;
         isLongCastling = false;
 
@@ -49,99 +33,21 @@ public class Move {
             to = isWhite ? 58 : 2;
             piece = isWhite ? 5 : 11;
         } else if (move.length() == 4 || move.length() == 6) {
-            piece = isWhite ? piecesMap.get("WP") : piecesMap.get("BP");
+            piece = isWhite ? 0 : 6;
             from = toNum(move.substring(0, 2));
             to = toNum(move.substring(2, 4));
-            if (isWhite && move.length() == 6) {
-                switch (move.toUpperCase().charAt(5)) {
-                    case 'N':
-                        promotionPiece = piecesMap.get("WN");
-                        break;
-                    case 'B':
-                        promotionPiece = piecesMap.get("WB");
-                        break;
-                    case 'R':
-                        promotionPiece = piecesMap.get("WR");
-                        break;
-                    case 'Q':
-                        promotionPiece = piecesMap.get("WQ");
-                        break;
-                    case 'K':
-                        promotionPiece = piecesMap.get("WK");
-                        break;
-                    default:
-                        break;
-                }
-            } else if (!isWhite && move.length() == 6) {
-                switch (move.toUpperCase().charAt(5)) {
-                    case 'N':
-                        promotionPiece = piecesMap.get("BN");
-                        break;
-                    case 'B':
-                        promotionPiece = piecesMap.get("BB");
-                        break;
-                    case 'R':
-                        promotionPiece = piecesMap.get("BR");
-                        break;
-                    case 'Q':
-                        promotionPiece = piecesMap.get("BQ");
-                        break;
-                    case 'K':
-                        promotionPiece = piecesMap.get("BK");
-                        break;
-                    default:
-                        break;
-                }
+            if (move.length() == 6) {
+                int promotion = pieceFromChar(move.charAt(5), isWhite);
+                if (promotion != 0)
+                    promotionPiece = promotion;
             }
         } else if (move.length() == 5) {
-            if (isWhite) {
-                switch (move.toUpperCase().charAt(0)) {
-                    case 'N':
-                        piece = piecesMap.get("WN");
-                        break;
-                    case 'B':
-                        piece = piecesMap.get("WB");
-                        break;
-                    case 'R':
-                        piece = piecesMap.get("WR");
-                        break;
-                    case 'Q':
-                        piece = piecesMap.get("WQ");
-                        break;
-                    case 'K':
-                        piece = piecesMap.get("WK");
-                        break;
-                    default:
-                        break;
-                }
-            } else {
-                switch (move.toUpperCase().charAt(0)) {
-                    case 'N':
-                        piece = piecesMap.get("BN");
-                        break;
-                    case 'B':
-                        piece = piecesMap.get("BB");
-                        break;
-                    case 'R':
-                        piece = piecesMap.get("BR");
-                        break;
-                    case 'Q':
-                        piece = piecesMap.get("BQ");
-                        break;
-                    case 'K':
-                        piece = piecesMap.get("BK");
-                        break;
-                    default:
-                        break;
-                }
-            }
+            piece = pieceFromChar(move.charAt(0), isWhite);
             from = toNum(move.substring(1, 3));
             to = toNum(move.substring(3, 5));
         }
 
         this.isWhite = isWhite;
-        this.fromString = toSquare(from);
-        this.toString = toSquare(to);
     }
 
     public Move(int from, int to, int piece, int capturedSquare, boolean isEP, int promotionPiece) {
@@ -151,8 +57,14 @@ public class Move {
         this.capturedSquare = capturedSquare;
         this.isEnPassant = isEP;
         this.promotionPiece = promotionPiece;
-        this.fromString = toSquare(from);
-        this.toString = toSquare(to);
+    }
+
+    // Piece index for a piece letter (N, B, R, Q or K), 0 for anything else
+    private static int pieceFromChar(char c, boolean isWhite) {
+        int piece = "NBRQK".indexOf(Character.toUpperCase(c)) + 1;
+        if (piece == 0)
+            return 0;
+        return isWhite ? piece : piece + 6;
     }
 
     public static int toNum(String s) {
@@ -167,6 +79,14 @@ public class Move {
         return "" + col + row;
     }
 
+    public String getFromString() {
+        return toSquare(from);
+    }
+
+    public String getToString() {
+        return toSquare(to);
+    }
+
     public boolean isPromotion() {
         return promotionPiece != -1;
     }
@@ -0,0 +1,91 @@
+package com.example.caissa_bot_backend.board_representation;
+
+// Reusable buffer of packed moves with an ordering score for each of them
+public class MoveList {
+    // No chess position has more than 218 legal moves
+    public static final int MAX_MOVES = 256;
+
+    private final int[] moves = new int[MAX_MOVES];
+    private final int[] scores = new int[MAX_MOVES];
+    private int size = 0;
+
+    public void add(int move) {
+        moves[size] = move;
+        scores[size] = 0;
+        size++;
+    }
+
+    public int get(int i) {
+        return moves[i];
+    }
+
+    public void set(int i, int move) {
+        moves[i] = move;
+    }
+
+    public int getScore(int i) {
+        return scores[i];
+    }
+
+    public void setScore(int i, int score) {
+        scores[i] = score;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public boolean contains(int move) {
+        for (int i = 0; i < size; i++) {
+            if (moves[i] == move)
+                return true;
+        }
+        return false;
+    }
+
+    // Move the best scored move among the remaining ones to position i and return
+    // it. Cheaper than a full sort when only the first few moves get searched.
+    public int pickBest(int i) {
+        int best = i;
+        for (int j = i + 1; j < size; j++) {
+            if (scores[j] > scores[best])
+                best = j;
+        }
+        int move = moves[best];
+        int score = scores[best];
+        moves[best] = moves[i];
+        scores[best] = scores[i];
+        moves[i] = move;
+        scores[i] = score;
+        return move;
+    }
+
+    // Stable insertion sort, highest score first. Move lists are short enough that
+    // this beats anything fancier.
+    public void sort() {
+        for (int i = 1; i < size; i++) {
+            int move = moves[i];
+            int score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                moves[j + 1] = moves[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            moves[j + 1] = move;
+            scores[j + 1] = score;
+        }
+    }
+}
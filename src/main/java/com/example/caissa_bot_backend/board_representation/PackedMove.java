@@ -0,0 +1,107 @@
+package com.example.caissa_bot_backend.board_representation;
+
+// Moves used inside the engine are packed into a single int so that move
+// generation and search do not allocate:
+//
+// bits 0-5 from square
+// bits 6-11 to square
+// bits 12-15 moving piece
+// bits 16-19 captured piece (15 when nothing is captured)
+// bits 20-23 promotion piece (15 when not a promotion)
+// bits 24-27 flags (en passant, short castle, long castle, double pawn push)
+//
+// Move is only used at the boundaries (REST controller and CLI).
+public class PackedMove {
+    public static final int NONE = 0;
+
+    public static final int EN_PASSANT = 1 << 24;
+    public static final int SHORT_CASTLE = 1 << 25;
+    public static final int LONG_CASTLE = 1 << 26;
+    public static final int DOUBLE_PUSH = 1 << 27;
+
+    private static final int NO_PIECE = 0xF;
+
+    public static int encode(int from, int to, int piece, int captured, int promotion, int flags) {
+        return from
+                | (to << 6)
+                | (piece << 12)
+                | ((captured == -1 ? NO_PIECE : captured) << 16)
+                | ((promotion == -1 ? NO_PIECE : promotion) << 20)
+                | flags;
+    }
+
+    public static int from(int move) {
+        return move & 0x3F;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 0x3F;
+    }
+
+    public static int piece(int move) {
+        return (move >>> 12) & 0xF;
+    }
+
+    public static int captured(int move) {
+        int captured = (move >>> 16) & 0xF;
+        return captured == NO_PIECE ? -1 : captured;
+    }
+
+    public static int promotion(int move) {
+        int promotion = (move >>> 20) & 0xF;
+        return promotion == NO_PIECE ? -1 : promotion;
+    }
+
+    // Square the captured piece stands on, which differs from the target square
+    // for en passant
+    public static int capturedSquare(int move) {
+        if (!isCapture(move))
+            return -1;
+        if (isEnPassant(move))
+            return piece(move) == 0 ? to(move) + 8 : to(move) - 8;
+        return to(move);
+    }
+
+    public static boolean isCapture(int move) {
+        return ((move >>> 16) & 0xF) != NO_PIECE;
+    }
+
+    public static boolean isPromotion(int move) {
+        return ((move >>> 20) & 0xF) != NO_PIECE;
+    }
+
+    public static boolean isEnPassant(int move) {
+        return (move & EN_PASSANT) != 0;
+    }
+
+    public static boolean isShortCastle(int move) {
+        return (move & SHORT_CASTLE) != 0;
+    }
+
+    public static boolean isLongCastle(int move) {
+        return (move & LONG_CASTLE) != 0;
+    }
+
+    public static boolean isCastling(int move) {
+        return (move & (SHORT_CASTLE | LONG_CASTLE)) != 0;
+    }
+
+    public static boolean isDoublePush(int move) {
+        return (move & DOUBLE_PUSH) != 0;
+    }
+
+    public static Move toMove(int move) {
+        Move m = new Move(from(move), to(move), piece(move), capturedSquare(move), isEnPassant(move),
+                promotion(move));
+        m.isShortCastling = isShortCastle(move);
+        m.isLongCastling = isLongCastle(move);
+        m.isWhite = piece(move) < 6;
+        return m;
+    }
+
+    public static String toString(int move) {
+        if (move == NONE)
+            return "none";
+        return toMove(move).toString();
+    }
+}
@@ -2,22 +2,30 @@ package com.example.caissa_bot_backend.controller;
 
 import java.util.Map;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.example.caissa_bot_backend.Engine;
 import com.example.caissa_bot_backend.board_representation.Bitboard;
 import com.example.caissa_bot_backend.board_representation.Move;
+import com.example.caissa_bot_backend.engine.SearchLimits;
 
 @RestController
 @CrossOrigin(origins = "*")
 public class CaissaController {
+    private static final int DEFAULT_DEPTH = 3;
+
     private Bitboard board = new Bitboard();
 
-    public CaissaController() {
+    public CaissaController(@Value("${caissa.tt.size-mb}") int ttSizeMb,
+            @Value("${caissa.search.threads}") int searchThreads) {
+        Engine.setHashSize(ttSizeMb);
+        Engine.setThreads(searchThreads);
         board.init();
     }
 
@@ -39,16 +47,40 @@ public class CaissaController {
     }
 
     @GetMapping("/engine_move")
-    public Bitboard engineMove() {
-        Engine engine = new Engine(board, 0);
-        board.makeMove(engine.generateBestMove());
+    public Bitboard engineMove(@RequestParam(required = false) Integer depth,
+            @RequestParam(required = false) Long movetime,
+            @RequestParam(required = false) Long nodes,
+            @RequestParam(required = false) Long deadline) {
+        Engine engine = new Engine(board, searchLimits(depth, movetime, nodes, deadline));
+        Move move = engine.generateBestMove();
+        if (move != null)
+            board.makeMove(move);
         return board;
     }
 
     @PostMapping("/best")
     public Move getBesMove(@RequestBody Map<String, Object> body) {
         String fen = (String) body.get("fen");
-        Integer depth = body.get("depth") != null ? ((Number) body.get("depth")).intValue() : 3;
-        return Engine.generateBestMove(fen, depth);
+        Integer depth = body.get("depth") != null ? ((Number) body.get("depth")).intValue() : null;
+        Long movetime = body.get("movetime") != null ? ((Number) body.get("movetime")).longValue() : null;
+        Long nodes = body.get("nodes") != null ? ((Number) body.get("nodes")).longValue() : null;
+        Long deadline = body.get("deadline") != null ? ((Number) body.get("deadline")).longValue() : null;
+        return Engine.generateBestMove(fen, searchLimits(depth, movetime, nodes, deadline));
+    }
+
+    // Without any limit the engine searches to DEFAULT_DEPTH
+    private SearchLimits searchLimits(Integer depth, Long movetime, Long nodes, Long deadline) {
+        SearchLimits limits = new SearchLimits();
+        if (depth != null)
+            limits.depth = depth;
+        else if (movetime == null && nodes == null && deadline == null)
+            limits.depth = DEFAULT_DEPTH;
+        if (movetime != null)
+            limits.movetime = movetime;
+        if (nodes != null)
+            limits.nodes = nodes;
+        if (deadline != null)
+            limits.deadline = deadline;
+        return limits;
     }
 }
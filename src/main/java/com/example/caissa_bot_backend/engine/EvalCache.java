@@ -0,0 +1,45 @@
+package com.example.caissa_bot_backend.engine;
+
+// Fixed-size cache of static evaluations by position hash, shared by all search
+// threads without locking. Like the transposition table, every slot is the key
+// XOR the data and the data, so a slot torn by two threads writing at once reads
+// as a miss. Only the static eval is stored: draws by repetition depend on the
+// game history rather than the position and are never cached. Hits are counted
+// by each search, as several searches may use the cache at once.
+public class EvalCache {
+    public static final long MISS = 0L;
+    public static final int DEFAULT_SIZE = 1 << 16;
+
+    // Set in every stored entry, so that a stored entry is never MISS
+    private static final long VALID = 1L << 32;
+
+    private final long[] table;
+    private final int mask;
+
+    // Size in entries, rounded down to a power of two
+    public EvalCache(int size) {
+        int entries = Integer.highestOneBit(Math.max(size, 1));
+        table = new long[entries * 2];
+        mask = entries - 1;
+    }
+
+    // Data of the entry stored for the key, or MISS
+    public long probe(long key) {
+        int index = ((int) key & mask) * 2;
+        long data = table[index + 1];
+        if (data != MISS && (table[index] ^ data) == key)
+            return data;
+        return MISS;
+    }
+
+    public void store(long key, int score) {
+        int index = ((int) key & mask) * 2;
+        long data = (score & 0xFFFFFFFFL) | VALID;
+        table[index] = key ^ data;
+        table[index + 1] = data;
+    }
+
+    public static int score(long data) {
+        return (int) data;
+    }
+}
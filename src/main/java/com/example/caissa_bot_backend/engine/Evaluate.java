@@ -141,59 +141,188 @@ public class Evaluate {
                         EG_BISHOP_SQUARES_VALUES, EG_ROOK_SQUARES_VALUES, EG_QUEEN_SQUARES_VALUES,
                         EG_KING_SQUARES_VALUES };
 
-        public static int evaluate(Bitboard board) {
+        // Material plus square value of each piece (0-11) on each square, from
+        // white's point of view. Bitboard keeps the sums over its pieces up to date
+        // as they move.
+        public static final int[][] MG_TABLE = new int[12][64];
+        public static final int[][] EG_TABLE = new int[12][64];
+
+        static {
+                for (int i = 0; i <= 5; i++) {
+                        for (int sq = 0; sq < 64; sq++) {
+                                MG_TABLE[i][sq] = MG_PIECE_VALUES[i] + MG_PIECE_SQUARES_TABLE[i][sq];
+                                EG_TABLE[i][sq] = EG_PIECE_VALUES[i] + EG_PIECE_SQUARES_TABLE[i][sq];
+                                // Black uses the same tables, mirrored
+                                MG_TABLE[i + 6][sq] = -(MG_PIECE_VALUES[i] + MG_PIECE_SQUARES_TABLE[i][sq ^ 56]);
+                                EG_TABLE[i + 6][sq] = -(EG_PIECE_VALUES[i] + EG_PIECE_SQUARES_TABLE[i][sq ^ 56]);
+                        }
+                }
+        }
+
+        // Pawn structure terms, by rank counted from the pawn's own side (0-7) for
+        // passed pawns. The square tables already reward advanced pawns, so these
+        // only add what depends on the other pawns.
+        public static final int[] MG_PASSED_PAWN_BONUS = { 0, 5, 5, 10, 20, 35, 60, 0 };
+        public static final int[] EG_PASSED_PAWN_BONUS = { 0, 10, 15, 25, 45, 75, 120, 0 };
+        public static final int MG_DOUBLED_PAWN = -10;
+        public static final int EG_DOUBLED_PAWN = -20;
+        public static final int MG_ISOLATED_PAWN = -10;
+        public static final int EG_ISOLATED_PAWN = -15;
+        public static final int MG_BACKWARD_PAWN = -8;
+        public static final int EG_BACKWARD_PAWN = -10;
+        // Middlegame bonus for each own pawn on the king's file or next to it, one
+        // and two ranks in front of a king on its first two ranks
+        public static final int[] MG_PAWN_SHIELD_BONUS = { 12, 6 };
+
+        private static final long FILE_A = 0x0101010101010101L;
+        private static final long FILE_H = FILE_A << 7;
+        private static final long[] FILES = new long[8];
+        private static final long[] ADJACENT_FILES = new long[8];
+        private static final long[] RANKS = new long[8];
+        // Squares in front of a pawn on its own and the adjacent files, which
+        // must be free of enemy pawns for it to be passed
+        private static final long[] WHITE_PASSED_MASKS = new long[64];
+        private static final long[] BLACK_PASSED_MASKS = new long[64];
+        // Squares on the adjacent files level with or behind a pawn, from where
+        // other pawns could support its advance
+        private static final long[] WHITE_SUPPORT_MASKS = new long[64];
+        private static final long[] BLACK_SUPPORT_MASKS = new long[64];
+
+        static {
+                for (int i = 0; i < 8; i++) {
+                        FILES[i] = FILE_A << i;
+                        RANKS[i] = 0xFFL << (8 * i);
+                }
+                for (int i = 0; i < 8; i++)
+                        ADJACENT_FILES[i] = (i > 0 ? FILES[i - 1] : 0) | (i < 7 ? FILES[i + 1] : 0);
+                for (int sq = 0; sq < 64; sq++) {
+                        int file = sq & 7;
+                        int row = sq >> 3;
+                        for (int r = 0; r < 8; r++) {
+                                if (r < row)
+                                        WHITE_PASSED_MASKS[sq] |= RANKS[r] & (FILES[file] | ADJACENT_FILES[file]);
+                                if (r > row)
+                                        BLACK_PASSED_MASKS[sq] |= RANKS[r] & (FILES[file] | ADJACENT_FILES[file]);
+                                if (r >= row)
+                                        WHITE_SUPPORT_MASKS[sq] |= RANKS[r] & ADJACENT_FILES[file];
+                                if (r <= row)
+                                        BLACK_SUPPORT_MASKS[sq] |= RANKS[r] & ADJACENT_FILES[file];
+                        }
+                }
+        }
+
+        // Draws by rule, which need no move generation. Checkmate and stalemate are
+        // left to the search, which knows when a position has no legal moves.
+        public static boolean isDraw(Bitboard board) {
+                return board.isFiftyMove() || board.isInsufficientMaterial() || board.isThreefoldRepetition();
+        }
+
+        // Static evaluation from the point of view of the side to move, taking the
+        // pawn structure from the table when it has been seen before. Rule draws
+        // are left to the caller (isDraw), so the result depends on the position
+        // alone and can be cached by position hash.
+        public static int staticEval(Bitboard board, PawnTable pawnTable) {
+                return taperedEval(board, pawnTable.probe(board));
+        }
+
+        private static int taperedEval(Bitboard board, long pawns) {
                 int who2Move = board.isWhiteToMove() ? 1 : -1;
-                if (board.isCheckmate())
-                        return -CHECKMATE_SCORE;
-                if (board.isStalemate())
-                        return DRAW_SCORE;
-                if (board.isThreefoldRepetition())
-                        return DRAW_SCORE;
-                if (board.isFiftyMove())
-                        return DRAW_SCORE;
-                if (board.isInsufficientMaterial())
-                        return DRAW_SCORE;
-
-                int gamephase = 0;
+                int mgScore = board.mgScore() + (int) (pawns >> 32) + pawnShield(board);
+                int egScore = board.egScore() + (int) pawns;
+
+                // Tapered eval: blend the middlegame and endgame scores by game phase
+                int mgPhase = Math.min(board.gamePhase(), 24);
+                int egPhase = 24 - mgPhase;
+                return who2Move * ((mgPhase * mgScore + egPhase * egScore) / 24);
+        }
+
+        // Passed, doubled, isolated and backward pawns, from white's point of view.
+        // Depends on the pawns only, so the result can be cached by pawn key. Packed
+        // as the middlegame score in the high and the endgame score in the low half.
+        public static long pawnStructure(Bitboard board) {
+                long whitePawns = board.pieces[0];
+                long blackPawns = board.pieces[6];
+                long whiteAttacks = ((whitePawns >>> 9) & ~FILE_H) | ((whitePawns >>> 7) & ~FILE_A);
+                long blackAttacks = ((blackPawns << 7) & ~FILE_H) | ((blackPawns << 9) & ~FILE_A);
 
                 int mgScore = 0;
                 int egScore = 0;
-                for (int i = 0; i <= 5; i++) {
-                        // Count material
-                        long whitePiece = board.getPieces()[i];
-                        long blackPiece = board.getPieces()[i + 6];
-
-                        int numWhitePieces = Long.bitCount(whitePiece);
-                        int numBlackPieces = Long.bitCount(blackPiece);
-
-                        int mgMaterialScore = (numWhitePieces - numBlackPieces) * MG_PIECE_VALUES[i];
-                        int egMaterialScore = (numWhitePieces - numBlackPieces) * EG_PIECE_VALUES[i];
-
-                        // Evaluate piece value based on position
-                        int mgPositionalScore = 0;
-                        int egPositionalScore = 0;
-                        while (whitePiece != 0) {
-                                int sq = Long.numberOfTrailingZeros(whitePiece);
-                                mgPositionalScore += MG_PIECE_SQUARES_TABLE[i][sq];
-                                egPositionalScore += EG_PIECE_SQUARES_TABLE[i][sq];
-                                whitePiece &= whitePiece - 1;
-                                gamephase += gamephaseInc[i];
+                for (int file = 0; file < 8; file++) {
+                        int whiteCount = Long.bitCount(whitePawns & FILES[file]);
+                        int blackCount = Long.bitCount(blackPawns & FILES[file]);
+                        if (whiteCount > 1) {
+                                mgScore += (whiteCount - 1) * MG_DOUBLED_PAWN;
+                                egScore += (whiteCount - 1) * EG_DOUBLED_PAWN;
                         }
-                        while (blackPiece != 0) {
-                                int sq = Long.numberOfTrailingZeros(blackPiece);
-                                int mirroredSq = sq ^ 56;
-                                mgPositionalScore -= MG_PIECE_SQUARES_TABLE[i][mirroredSq];
-                                egPositionalScore -= EG_PIECE_SQUARES_TABLE[i][mirroredSq];
-                                blackPiece &= blackPiece - 1;
-                                gamephase += gamephaseInc[i];
+                        if (blackCount > 1) {
+                                mgScore -= (blackCount - 1) * MG_DOUBLED_PAWN;
+                                egScore -= (blackCount - 1) * EG_DOUBLED_PAWN;
                         }
+                }
 
-                        mgScore += who2Move * (mgMaterialScore + mgPositionalScore);
-                        egScore += who2Move * (egMaterialScore + egPositionalScore);
+                long pawns = whitePawns;
+                while (pawns != 0) {
+                        int sq = Long.numberOfTrailingZeros(pawns);
+                        int file = sq & 7;
+                        // Only the front pawn of a doubled pair can be passed
+                        if ((blackPawns & WHITE_PASSED_MASKS[sq]) == 0
+                                        && (whitePawns & WHITE_PASSED_MASKS[sq] & FILES[file]) == 0) {
+                                mgScore += MG_PASSED_PAWN_BONUS[7 - (sq >> 3)];
+                                egScore += EG_PASSED_PAWN_BONUS[7 - (sq >> 3)];
+                        }
+                        if ((whitePawns & ADJACENT_FILES[file]) == 0) {
+                                mgScore += MG_ISOLATED_PAWN;
+                                egScore += EG_ISOLATED_PAWN;
+                        } else if ((whitePawns & WHITE_SUPPORT_MASKS[sq]) == 0 && sq >= 8
+                                        && (blackAttacks & (1L << (sq - 8))) != 0) {
+                                // No pawn can come to its support, and it cannot safely advance
+                                mgScore += MG_BACKWARD_PAWN;
+                                egScore += EG_BACKWARD_PAWN;
+                        }
+                        pawns &= pawns - 1;
                 }
 
-                int mgPhase = gamephase > 24 ? 24 : gamephase;
-                int egPhase = 24 - mgPhase;
-                return (mgPhase * mgScore + egPhase * egScore) / 24;
+                pawns = blackPawns;
+                while (pawns != 0) {
+                        int sq = Long.numberOfTrailingZeros(pawns);
+                        int file = sq & 7;
+                        if ((whitePawns & BLACK_PASSED_MASKS[sq]) == 0
+                                        && (blackPawns & BLACK_PASSED_MASKS[sq] & FILES[file]) == 0) {
+                                mgScore -= MG_PASSED_PAWN_BONUS[sq >> 3];
+                                egScore -= EG_PASSED_PAWN_BONUS[sq >> 3];
+                        }
+                        if ((blackPawns & ADJACENT_FILES[file]) == 0) {
+                                mgScore -= MG_ISOLATED_PAWN;
+                                egScore -= EG_ISOLATED_PAWN;
+                        } else if ((blackPawns & BLACK_SUPPORT_MASKS[sq]) == 0 && sq < 56
+                                        && (whiteAttacks & (1L << (sq + 8))) != 0) {
+                                mgScore -= MG_BACKWARD_PAWN;
+                                egScore -= EG_BACKWARD_PAWN;
+                        }
+                        pawns &= pawns - 1;
+                }
+
+                return ((long) mgScore << 32) | (egScore & 0xFFFFFFFFL);
+        }
+
+        // Pawns in front of each king, from white's point of view. Depends on the
+        // king squares too, so it is not cached with the pawn structure.
+        private static int pawnShield(Bitboard board) {
+                int score = 0;
+                int whiteKing = Long.numberOfTrailingZeros(board.pieces[5]);
+                int row = whiteKing >> 3;
+                if (row >= 6) {
+                        long shield = board.pieces[0] & (FILES[whiteKing & 7] | ADJACENT_FILES[whiteKing & 7]);
+                        score += Long.bitCount(shield & RANKS[row - 1]) * MG_PAWN_SHIELD_BONUS[0];
+                        score += Long.bitCount(shield & RANKS[row - 2]) * MG_PAWN_SHIELD_BONUS[1];
+                }
+                int blackKing = Long.numberOfTrailingZeros(board.pieces[11]);
+                row = blackKing >> 3;
+                if (row <= 1) {
+                        long shield = board.pieces[6] & (FILES[blackKing & 7] | ADJACENT_FILES[blackKing & 7]);
+                        score -= Long.bitCount(shield & RANKS[row + 1]) * MG_PAWN_SHIELD_BONUS[0];
+                        score -= Long.bitCount(shield & RANKS[row + 2]) * MG_PAWN_SHIELD_BONUS[1];
+                }
+                return score;
         }
 }
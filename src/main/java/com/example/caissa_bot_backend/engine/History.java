@@ -0,0 +1,59 @@
+package com.example.caissa_bot_backend.engine;
+
+import com.example.caissa_bot_backend.board_representation.PackedMove;
+
+// Move ordering statistics gathered by one search thread from the quiet moves
+// that caused beta cutoffs:
+//
+// - two killer moves per ply, tried right after the captures
+// - a history score per piece and target square, for ordering the other quiets
+// - the counter move that refuted each move of the opponent, indexed by the
+//   piece and target square of that move
+public class History {
+    // History scores stay within +/- MAX_HISTORY
+    public static final int MAX_HISTORY = 16384;
+
+    private final int[][] killers = new int[Search.MAX_PLY][2];
+    private final int[][] history = new int[12][64];
+    private final int[][] counterMoves = new int[12][64];
+
+    public int killer(int ply, int slot) {
+        return killers[ply][slot];
+    }
+
+    public int counterMove(int previousMove) {
+        if (previousMove == PackedMove.NONE)
+            return PackedMove.NONE;
+        return counterMoves[PackedMove.piece(previousMove)][PackedMove.to(previousMove)];
+    }
+
+    public int score(int move) {
+        return history[PackedMove.piece(move)][PackedMove.to(move)];
+    }
+
+    // The quiet move cut off after the given quiet moves were searched without
+    // success. It gets a bonus that grows with depth, and they get a malus.
+    public void update(int ply, int previousMove, int move, int depth, int[] quietsSearched, int quietCount) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        if (previousMove != PackedMove.NONE)
+            counterMoves[PackedMove.piece(previousMove)][PackedMove.to(previousMove)] = move;
+
+        int bonus = Math.min(depth * depth, MAX_HISTORY / 4);
+        addBonus(move, bonus);
+        for (int i = 0; i < quietCount; i++) {
+            if (quietsSearched[i] != move)
+                addBonus(quietsSearched[i], -bonus);
+        }
+    }
+
+    // Scores shrink as they get close to the limit, so recent cutoffs still count
+    // after a long search
+    private void addBonus(int move, int bonus) {
+        int[] scores = history[PackedMove.piece(move)];
+        int to = PackedMove.to(move);
+        scores[to] += bonus - scores[to] * Math.abs(bonus) / MAX_HISTORY;
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.caissa_bot_backend.engine;
+
+import com.example.caissa_bot_backend.board_representation.Bitboard;
+import com.example.caissa_bot_backend.board_representation.MoveList;
+import com.example.caissa_bot_backend.board_representation.PackedMove;
+import com.example.caissa_bot_backend.move_gen.CheckInfo;
+
+// Hands out the moves of a node one at a time, in stages:
+//
+// 1. the transposition table move
+// 2. captures and promotions that do not lose material, most valuable victim /
+//    least valuable attacker first
+// 3. killer moves and the counter move to the opponent's last move
+// 4. the remaining quiet moves, checks first, then by history score
+// 5. captures that lose material according to SEE
+//
+// Each stage is only generated once the previous one is used up, so a node that
+// cuts off on the hash move or a capture never generates its quiet moves.
+//
+// In quiescence mode only the captures and promotions of stage 2 are returned.
+public class MovePicker {
+    private static final int TT_MOVE = 0;
+    private static final int GENERATE_CAPTURES = 1;
+    private static final int CAPTURES = 2;
+    private static final int KILLERS = 3;
+    private static final int GENERATE_QUIETS = 4;
+    private static final int QUIETS = 5;
+    private static final int BAD_CAPTURES = 6;
+    private static final int DONE = 7;
+
+    private final MoveList captures = new MoveList();
+    private final MoveList badCaptures = new MoveList();
+    private final MoveList quiets = new MoveList();
+    // Killers and counter move
+    private final int[] refutations = new int[3];
+    private final CheckInfo checkInfo = new CheckInfo();
+    // Whether checkInfo has been set up for this node
+    private boolean hasCheckInfo;
+    private final History history;
+    private final SEE see;
+
+    private Bitboard board;
+    private int ttMove;
+    private int stage;
+    private int index;
+    private boolean quiescence;
+
+    public MovePicker(History history, SEE see) {
+        this.history = history;
+        this.see = see;
+    }
+
+    public void init(Bitboard board, int ttMove, int ply) {
+        this.board = board;
+        this.ttMove = board.isLegal(ttMove) ? ttMove : PackedMove.NONE;
+        refutations[0] = history.killer(ply, 0);
+        refutations[1] = history.killer(ply, 1);
+        refutations[2] = history.counterMove(board.lastMove());
+        // Only try the counter move once
+        if (refutations[2] == refutations[0] || refutations[2] == refutations[1])
+            refutations[2] = PackedMove.NONE;
+        hasCheckInfo = false;
+        stage = TT_MOVE;
+        quiescence = false;
+    }
+
+    public void initQuiescence(Bitboard board) {
+        this.board = board;
+        ttMove = PackedMove.NONE;
+        hasCheckInfo = false;
+        stage = GENERATE_CAPTURES;
+        quiescence = true;
+    }
+
+    // Next move to search, or PackedMove.NONE when there are none left
+    public int next() {
+        while (true) {
+            switch (stage) {
+                case TT_MOVE:
+                    stage = GENERATE_CAPTURES;
+                    if (ttMove != PackedMove.NONE)
+                        return ttMove;
+                    break;
+
+                case GENERATE_CAPTURES:
+                    board.generateCaptures(captures);
+                    badCaptures.clear();
+                    scoreCaptures();
+                    index = 0;
+                    stage = CAPTURES;
+                    break;
+
+                case CAPTURES:
+                    while (index < captures.size()) {
+                        int move = captures.pickBest(index++);
+                        if (move == ttMove)
+                            continue;
+                        // Losing captures are kept for after the quiet moves
+                        if (see.isGood(board, move))
+                            return move;
+                        badCaptures.add(move);
+                    }
+                    index = 0;
+                    // Losing captures are not worth searching in quiescence
+                    stage = quiescence ? DONE : KILLERS;
+                    break;
+
+                case KILLERS:
+                    while (index < refutations.length) {
+                        int refutation = refutations[index++];
+                        // These come from other nodes, so they may not be legal here
+                        if (refutation != ttMove && board.isLegal(refutation))
+                            return refutation;
+                    }
+                    stage = GENERATE_QUIETS;
+                    break;
+
+                case GENERATE_QUIETS:
+                    board.generateQuiets(quiets);
+                    scoreQuiets();
+                    index = 0;
+                    stage = QUIETS;
+                    break;
+
+                case QUIETS:
+                    while (index < quiets.size()) {
+                        int move = quiets.pickBest(index++);
+                        if (move != ttMove && move != refutations[0] && move != refutations[1]
+                                && move != refutations[2])
+                            return move;
+                    }
+                    index = 0;
+                    stage = BAD_CAPTURES;
+                    break;
+
+                case BAD_CAPTURES:
+                    // Already in most valuable victim order
+                    if (index < badCaptures.size())
+                        return badCaptures.get(index++);
+                    stage = DONE;
+                    break;
+
+                default:
+                    return PackedMove.NONE;
+            }
+        }
+    }
+
+    // Whether a move of this node gives check, before it is played. The board
+    // must still be at the node's position.
+    public boolean givesCheck(int move) {
+        if (!hasCheckInfo) {
+            checkInfo.init(board);
+            hasCheckInfo = true;
+        }
+        return checkInfo.givesCheck(move);
+    }
+
+    // Most valuable victim first, least valuable attacker breaking ties
+    private void scoreCaptures() {
+        for (int i = 0; i < captures.size(); i++) {
+            int move = captures.get(i);
+            int score = -(PackedMove.piece(move) % 6);
+            if (PackedMove.isCapture(move))
+                score += (PackedMove.captured(move) % 6 + 1) * 8;
+            if (PackedMove.isPromotion(move))
+                score += (PackedMove.promotion(move) % 6) * 8;
+            captures.setScore(i, score);
+        }
+    }
+
+    // Checks first, then by history score
+    private void scoreQuiets() {
+        for (int i = 0; i < quiets.size(); i++) {
+            int move = quiets.get(i);
+            int score = history.score(move);
+            if (givesCheck(move))
+                score += 2 * History.MAX_HISTORY;
+            quiets.setScore(i, score);
+        }
+    }
+}
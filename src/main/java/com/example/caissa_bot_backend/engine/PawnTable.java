@@ -0,0 +1,34 @@
+package com.example.caissa_bot_backend.engine;
+
+import com.example.caissa_bot_backend.board_representation.Bitboard;
+
+// Cache of Evaluate.pawnStructure, keyed by the pawn hash. Pawns move rarely, so
+// most positions of a search share their pawn structure with one seen before.
+// Not thread safe: every search thread has its own.
+public class PawnTable {
+    public static final int DEFAULT_SIZE = 1 << 14;
+
+    private final long[] keys;
+    private final long[] scores;
+    private final int mask;
+
+    // Size in entries, rounded down to a power of two
+    public PawnTable(int size) {
+        int entries = Integer.highestOneBit(Math.max(size, 1));
+        keys = new long[entries];
+        scores = new long[entries];
+        mask = entries - 1;
+    }
+
+    // Empty slots have key 0, which is also the key of a board without pawns,
+    // and score 0, which is also its score
+    public long probe(Bitboard board) {
+        long key = board.pawnHash();
+        int index = (int) key & mask;
+        if (keys[index] != key) {
+            keys[index] = key;
+            scores[index] = Evaluate.pawnStructure(board);
+        }
+        return scores[index];
+    }
+}
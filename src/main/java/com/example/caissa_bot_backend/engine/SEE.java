@@ -0,0 +1,104 @@
+package com.example.caissa_bot_backend.engine;
+
+import com.example.caissa_bot_backend.board_representation.Bitboard;
+import com.example.caissa_bot_backend.board_representation.PackedMove;
+import com.example.caissa_bot_backend.move_gen.MagicBitboards;
+
+// Static exchange evaluation: the material balance of the capture sequence on the
+// target square of a move, with both sides always recapturing with their least
+// valuable attacker and free to stop when going on would lose material.
+// Sliders behind the pieces that have already captured (x-rays) join the
+// exchange once the square in front of them is vacated. Pins are ignored.
+//
+// The swap list is reused between calls, so every search thread has its own SEE.
+public class SEE {
+    // Middlegame material values, with the king worth more than everything else
+    // so that it only ever captures last
+    private static final int[] VALUES = {
+            Evaluate.MG_PIECE_VALUES[0], Evaluate.MG_PIECE_VALUES[1], Evaluate.MG_PIECE_VALUES[2],
+            Evaluate.MG_PIECE_VALUES[3], Evaluate.MG_PIECE_VALUES[4], 20_000 };
+
+    // Gains of the captures played so far; there are at most 32 pieces to capture
+    private final int[] gain = new int[32];
+
+    public static int value(int piece) {
+        return VALUES[piece % 6];
+    }
+
+    public int see(Bitboard board, int move) {
+        if (PackedMove.isCastling(move))
+            return 0;
+
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        boolean isPromotion = PackedMove.isPromotion(move);
+
+        int depth = 0;
+        gain[0] = PackedMove.isCapture(move) ? value(PackedMove.captured(move)) : 0;
+        if (isPromotion)
+            gain[0] += value(PackedMove.promotion(move)) - value(0);
+
+        long occupancy = board.occupancy & ~(1L << from);
+        if (PackedMove.isEnPassant(move))
+            occupancy &= ~(1L << PackedMove.capturedSquare(move));
+
+        long bishopsQueens = board.pieces[2] | board.pieces[8] | board.pieces[4] | board.pieces[10];
+        long rooksQueens = board.pieces[3] | board.pieces[9] | board.pieces[4] | board.pieces[10];
+        long attackers = board.attackersTo(to, occupancy) & occupancy;
+
+        // Value of the piece standing on the target square, which the next capture wins
+        int onSquare = value(isPromotion ? PackedMove.promotion(move) : PackedMove.piece(move));
+        boolean whiteToCapture = PackedMove.piece(move) >= 6;
+
+        while (true) {
+            // What the side to capture wins if it takes and is not recaptured
+            depth++;
+            gain[depth] = onSquare - gain[depth - 1];
+            // Neither side can improve by going on
+            if (Math.max(-gain[depth - 1], gain[depth]) < 0)
+                break;
+
+            long sideAttackers = attackers & (whiteToCapture ? board.whiteOccupancy : board.blackOccupancy);
+            if (sideAttackers == 0)
+                break;
+
+            int offset = whiteToCapture ? 0 : 6;
+            int type = 0;
+            long capturer = 0L;
+            for (; type < 6; type++) {
+                capturer = sideAttackers & board.pieces[offset + type];
+                if (capturer != 0)
+                    break;
+            }
+
+            // The king cannot capture into a defended square
+            if (type == 5 && (attackers & ~sideAttackers) != 0)
+                break;
+
+            occupancy &= ~Long.lowestOneBit(capturer);
+            if (type == 0 || type == 2 || type == 4)
+                attackers |= MagicBitboards.getBishopAttacks(to, occupancy) & bishopsQueens;
+            if (type == 3 || type == 4)
+                attackers |= MagicBitboards.getRookAttacks(to, occupancy) & rooksQueens;
+            attackers &= occupancy;
+
+            onSquare = VALUES[type];
+            whiteToCapture = !whiteToCapture;
+        }
+
+        // The last gain is only speculative, as nobody could take there
+        while (--depth > 0)
+            gain[depth - 1] = -Math.max(-gain[depth - 1], gain[depth]);
+        return gain[0];
+    }
+
+    // Whether the move does not lose material in the exchange. A capture of a
+    // piece at least as valuable as the capturer never does, so the exchange is
+    // only played out for the others.
+    public boolean isGood(Bitboard board, int move) {
+        if (PackedMove.isCapture(move) && !PackedMove.isPromotion(move)
+                && value(PackedMove.captured(move)) >= value(PackedMove.piece(move)))
+            return true;
+        return see(board, move) >= 0;
+    }
+}
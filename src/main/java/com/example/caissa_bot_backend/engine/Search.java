@@ -1,91 +1,475 @@
 package com.example.caissa_bot_backend.engine;
 
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Arrays;
 
 import com.example.caissa_bot_backend.board_representation.Bitboard;
-import com.example.caissa_bot_backend.board_representation.Move;;
+import com.example.caissa_bot_backend.board_representation.MoveList;
+import com.example.caissa_bot_backend.board_representation.PackedMove;
 
+// One Search per thread: the move pickers, move ordering history, SEE buffers and
+// pawn table are reused between nodes and must not be shared.
+//
+// Several threads can search the same position at once (Lazy SMP). They only
+// share the transposition table, and each finds the work of the others there.
+// Odd threads start one ply deeper, so that half the threads are always an
+// iteration ahead and fill the table for the others; beyond that, threads
+// diverge through the table entries they find at different times. The
+// evaluation cache is shared the same way.
 public class Search {
-    public static HashMap<Long, TranspositionEntry> transpositionTable = new HashMap<>();
+    public static final int MAX_PLY = 128;
+    // Larger than any evaluation, and safe to negate
+    public static final int INFINITY = 1_000_000;
+    // Scores beyond this are mates, CHECKMATE_SCORE minus the distance in plies
+    public static final int MATE_BOUND = Evaluate.CHECKMATE_SCORE - MAX_PLY;
+    // Nodes between two looks at the clock
+    public static final int POLL_INTERVAL = 1024;
+    // Half width of the first window around the previous iteration's score
+    public static final int ASPIRATION_WINDOW = 25;
+    // Whether quiescence search answers checks with every evasion instead of
+    // standing pat
+    public static final boolean QUIESCENCE_CHECK_EVASIONS = true;
+    // Safety margin for delta pruning, on top of the value of the captured piece
+    public static final int DELTA_MARGIN = 200;
+    // Null move pruning is tried from this depth on
+    public static final int NULL_MOVE_MIN_DEPTH = 3;
+    // Late move reductions start from this depth and after this many moves
+    public static final int LMR_MIN_DEPTH = 3;
+    public static final int LMR_MIN_MOVES = 3;
 
-    public static int negaMax(Bitboard board, int depth, int alpha, int beta) {
-        long hash = board.zobristHash();
-        TranspositionEntry entry = transpositionTable.get(hash);
-        // Only return transposition with deeper search
-        if (entry != null && entry.depth >= depth) {
-            return entry.score;
+    // Frontier pruning margins, indexed by the remaining depth (1 to 3), in
+    // terms of the middlegame piece values:
+    // - futility: quiet moves are skipped when the static eval plus the margin
+    //   cannot reach alpha
+    // - reverse futility: the node fails high when the static eval minus the
+    //   margin still beats beta
+    // - razoring: the node drops into quiescence search when the static eval
+    //   plus the margin cannot reach alpha
+    public static final int FRONTIER_DEPTH = 3;
+    public static final int[] FUTILITY_MARGINS = { 0,
+            2 * Evaluate.MG_PIECE_VALUES[0], Evaluate.MG_PIECE_VALUES[1], Evaluate.MG_PIECE_VALUES[3] };
+    public static final int[] REVERSE_FUTILITY_MARGINS = { 0,
+            Evaluate.MG_PIECE_VALUES[0], 2 * Evaluate.MG_PIECE_VALUES[0], Evaluate.MG_PIECE_VALUES[1] };
+    public static final int[] RAZOR_MARGINS = { 0,
+            Evaluate.MG_PIECE_VALUES[3] + 2 * Evaluate.MG_PIECE_VALUES[0],
+            Evaluate.MG_PIECE_VALUES[3] + Evaluate.MG_PIECE_VALUES[1], Evaluate.MG_PIECE_VALUES[4] };
+
+    // Base late move reduction by depth and move number
+    private static final int[][] REDUCTIONS = new int[SearchLimits.MAX_DEPTH + 1][MoveList.MAX_MOVES];
+
+    static {
+        for (int depth = 1; depth <= SearchLimits.MAX_DEPTH; depth++) {
+            for (int moves = 1; moves < MoveList.MAX_MOVES; moves++)
+                REDUCTIONS[depth][moves] = (int) (0.75 + Math.log(depth) * Math.log(moves) / 2.25);
+        }
+    }
+
+    private final MovePicker[] pickers = new MovePicker[MAX_PLY];
+    private final History history = new History();
+    private final SEE see = new SEE();
+    private final PawnTable pawnTable = new PawnTable(PawnTable.DEFAULT_SIZE);
+    // Quiet moves searched so far at each ply, to lower their history score when
+    // a later one cuts off
+    private final int[][] quietsSearched = new int[MAX_PLY][MoveList.MAX_MOVES];
+    // Triangular table: pv[ply] holds the best line found from ply onwards, in
+    // pv[ply][ply..pvLength[ply] - 1]
+    private final int[][] pv = new int[MAX_PLY][MAX_PLY];
+    private final int[] pvLength = new int[MAX_PLY];
+
+    private final SearchControl control;
+    private final TranspositionTable transpositionTable;
+    private final EvalCache evalCache;
+    private final int threadId;
+    private long nodes = 0;
+    // Evaluation cache lookups and hits of this search, for the hit rate
+    private long evalProbes = 0;
+    private long evalHits = 0;
+    // Once set, every node returns straight away and the result must be ignored
+    private boolean stopped = false;
+
+    // Result of the last completed iteration
+    private int bestMove = PackedMove.NONE;
+    private int bestScore = 0;
+    private int completedDepth = 0;
+    private int[] principalVariation = new int[0];
+
+    public Search(SearchControl control, TranspositionTable transpositionTable, EvalCache evalCache, int threadId) {
+        this.control = control;
+        this.transpositionTable = transpositionTable;
+        this.evalCache = evalCache;
+        this.threadId = threadId;
+    }
+
+    // Search depth 1, 2, 3... until maxDepth or until the search is stopped. An
+    // interrupted iteration is thrown away.
+    public void iterativeDeepening(Bitboard board, int maxDepth) {
+        // Threads started after the stop do not wait for their first poll
+        stopped = control.isStopped();
+
+        MoveList rootMoves = board.generateLegalMoves(new MoveList());
+        if (rootMoves.isEmpty())
+            return;
+
+        for (int depth = 1 + threadId % 2; depth <= maxDepth; depth++) {
+            int score = aspirationSearch(board, rootMoves, depth);
+            if (stopped)
+                break;
+            bestMove = rootMoves.get(0);
+            bestScore = score;
+            completedDepth = depth;
+            principalVariation = Arrays.copyOf(pv[0], pvLength[0]);
         }
+        // Nodes since the last poll
+        control.report(nodes % POLL_INTERVAL);
+    }
+
+    // The score rarely moves much from one iteration to the next, so search a
+    // narrow window around the last one first and widen it on the side that
+    // failed until the score falls inside
+    private int aspirationSearch(Bitboard board, MoveList rootMoves, int depth) {
+        if (completedDepth == 0 || Math.abs(bestScore) >= MATE_BOUND)
+            return searchRoot(board, rootMoves, depth, -INFINITY, INFINITY);
 
-        if (depth == 0 || board.isGameOver()) {
-            return Evaluate.evaluate(board);
+        int delta = ASPIRATION_WINDOW;
+        int alpha = Math.max(bestScore - delta, -INFINITY);
+        int beta = Math.min(bestScore + delta, INFINITY);
+        while (true) {
+            int score = searchRoot(board, rootMoves, depth, alpha, beta);
+            if (stopped)
+                return 0;
+            if (score <= alpha && alpha > -INFINITY)
+                alpha = Math.max(score - delta, -INFINITY);
+            else if (score >= beta && beta < INFINITY)
+                beta = Math.min(score + delta, INFINITY);
+            else
+                return score;
+            delta *= 2;
         }
+    }
 
-        int maxEval = Integer.MIN_VALUE;
-        ArrayList<Move> legalMoves = board.generateLegalMoves();
-        legalMoves.sort(new MoveComparator(board));
-        for (Move move : legalMoves) {
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    public long getEvalProbes() {
+        return evalProbes;
+    }
+
+    public long getEvalHits() {
+        return evalHits;
+    }
+
+    public int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    // Best line of the last completed iteration, starting with the best move
+    public int[] getPrincipalVariation() {
+        return principalVariation;
+    }
+
+    // Returns the score of the best root move and moves it to the front, where
+    // the next iteration searches it first. On a fail low the order is kept, as
+    // every move only got an upper bound.
+    private int searchRoot(Bitboard board, MoveList rootMoves, int depth, int alpha, int beta) {
+        int alphaOrig = alpha;
+        int maxEval = -INFINITY;
+        int best = 0;
+        pvLength[0] = 0;
+        for (int i = 0; i < rootMoves.size(); i++) {
+            int move = rootMoves.get(i);
             board.makeMove(move);
-            int eval = -negaMax(board, depth - 1, -beta, -alpha);
+            int eval = principalVariationSearch(board, depth, 1, alpha, beta, i == 0, 0);
             board.undoMove();
+            if (stopped)
+                return 0;
+
+            if (eval > maxEval) {
+                maxEval = eval;
+                best = i;
+            }
+            if (eval > alpha) {
+                alpha = eval;
+                updatePv(0, move);
+                if (alpha >= beta)
+                    break;
+            }
+        }
+
+        if (maxEval > alphaOrig)
+            moveToFront(rootMoves, best);
+        int bound = maxEval <= alphaOrig ? TranspositionTable.UPPER
+                : maxEval >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        transpositionTable.store(board.zobristHash(), rootMoves.get(0), maxEval, depth, bound);
+        return maxEval;
+    }
+
+    // Search a child of a node at the given depth and ply, from the node's point
+    // of view. Only the first move gets the full window. The others are expected
+    // to be worse and are first searched with a zero window around alpha, which
+    // is much cheaper, and searched again in full if that proves them better.
+    // A late move may also be searched less deep at first, and is searched again
+    // at full depth if it beats alpha anyway.
+    private int principalVariationSearch(Bitboard board, int depth, int ply, int alpha, int beta,
+            boolean first, int reduction) {
+        if (first)
+            return -negaMax(board, depth - 1, ply, -beta, -alpha);
+        int eval = -negaMax(board, depth - 1 - reduction, ply, -alpha - 1, -alpha);
+        if (eval > alpha && reduction > 0)
+            eval = -negaMax(board, depth - 1, ply, -alpha - 1, -alpha);
+        if (eval > alpha && eval < beta)
+            eval = -negaMax(board, depth - 1, ply, -beta, -alpha);
+        return eval;
+    }
+
+    private void updatePv(int ply, int move) {
+        pv[ply][ply] = move;
+        int length = pvLength[ply + 1];
+        System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, length - ply - 1);
+        pvLength[ply] = length;
+    }
+
+    private static void moveToFront(MoveList moves, int index) {
+        int move = moves.get(index);
+        for (int i = index; i > 0; i--)
+            moves.set(i, moves.get(i - 1));
+        moves.set(0, move);
+    }
+
+    private int negaMax(Bitboard board, int depth, int ply, int alpha, int beta) {
+        pvLength[ply] = ply;
+        if (++nodes % POLL_INTERVAL == 0)
+            stopped = control.report(POLL_INTERVAL);
+        if (stopped)
+            return 0;
+        if (Evaluate.isDraw(board))
+            return Evaluate.DRAW_SCORE;
 
-            maxEval = Math.max(maxEval, eval);
-            alpha = Math.max(maxEval, alpha);
+        long hash = board.zobristHash();
+        long entry = transpositionTable.probe(hash);
+        // Only use transpositions searched at least as deep. A bound narrows the
+        // window and only cuts off when the window closes.
+        if (entry != TranspositionTable.MISS && TranspositionTable.depth(entry) >= depth) {
+            int score = scoreFromTT(TranspositionTable.score(entry), ply);
+            int bound = TranspositionTable.bound(entry);
+            if (bound == TranspositionTable.EXACT)
+                return score;
+            if (bound == TranspositionTable.LOWER)
+                alpha = Math.max(alpha, score);
+            else
+                beta = Math.min(beta, score);
             if (alpha >= beta)
+                return score;
+        }
+
+        if (depth <= 0)
+            return quiescence(board, ply, alpha, beta);
+        int alphaOrig = alpha;
+        boolean isPvNode = beta - alpha > 1;
+        boolean inCheck = board.isCheck();
+        int staticEval = inCheck ? -INFINITY : evaluate(board);
+        boolean isFrontier = !inCheck && depth <= FRONTIER_DEPTH
+                && Math.abs(alpha) < MATE_BOUND && Math.abs(beta) < MATE_BOUND;
+
+        if (isFrontier && !isPvNode) {
+            // Reverse futility: too far ahead for any move of the opponent to matter
+            if (staticEval - REVERSE_FUTILITY_MARGINS[depth] >= beta)
+                return staticEval;
+            // Razoring: too far behind for a quiet move to help, so only
+            // captures can get the score back up to alpha
+            if (staticEval + RAZOR_MARGINS[depth] < alpha) {
+                int eval = quiescence(board, ply, alpha, beta);
+                if (depth == 1 || eval < alpha)
+                    return eval;
+            }
+        }
+        // Futility: quiet moves that do not give check will not raise alpha
+        boolean isFutile = isFrontier && staticEval + FUTILITY_MARGINS[depth] <= alpha;
+
+        // Null move pruning: let the opponent move twice in a row. If a reduced
+        // search still fails high, a real move would almost surely do too. Not
+        // done twice in a row, in check, or with only pawns left, where being
+        // forced to move can be a disadvantage (zugzwang).
+        if (!isPvNode && !inCheck && depth >= NULL_MOVE_MIN_DEPTH && board.lastMove() != PackedMove.NONE
+                && board.hasNonPawnMaterial(board.isWhiteToMove()) && staticEval >= beta) {
+            int reduction = 3 + depth / 6;
+            board.makeNullMove();
+            int eval = -negaMax(board, depth - 1 - reduction, ply + 1, -beta, -beta + 1);
+            board.undoNullMove();
+            if (stopped)
+                return 0;
+            // Do not trust a mate found without moving
+            if (eval >= beta)
+                return eval >= MATE_BOUND ? beta : eval;
+        }
+
+        MovePicker picker = picker(ply);
+        picker.init(board, TranspositionTable.move(entry), ply);
+
+        int maxEval = -INFINITY;
+        int bestMove = PackedMove.NONE;
+        int moveCount = 0;
+        int quietCount = 0;
+        int move;
+        while ((move = picker.next()) != PackedMove.NONE) {
+            boolean isQuiet = !PackedMove.isCapture(move) && !PackedMove.isPromotion(move);
+            boolean givesCheck = picker.givesCheck(move);
+
+            if (isFutile && isQuiet && !givesCheck && moveCount > 0) {
+                maxEval = Math.max(maxEval, staticEval + FUTILITY_MARGINS[depth]);
+                continue;
+            }
+            board.makeMove(move);
+
+            // Late move reductions: with good ordering, quiet moves that come late
+            // rarely turn out best. Moves with a good history are reduced less.
+            int reduction = 0;
+            if (isQuiet && depth >= LMR_MIN_DEPTH && moveCount >= LMR_MIN_MOVES && !inCheck && !givesCheck
+                    && move != history.killer(ply, 0) && move != history.killer(ply, 1)) {
+                reduction = REDUCTIONS[Math.min(depth, SearchLimits.MAX_DEPTH)][moveCount];
+                if (isPvNode)
+                    reduction--;
+                reduction -= history.score(move) / (History.MAX_HISTORY / 2);
+                reduction = Math.max(0, Math.min(reduction, depth - 2));
+            }
+
+            int eval = principalVariationSearch(board, depth, ply + 1, alpha, beta, moveCount == 0, reduction);
+            board.undoMove();
+            if (stopped)
+                return 0;
+            moveCount++;
+
+            if (eval > maxEval) {
+                maxEval = eval;
+                bestMove = move;
+            }
+            if (eval > alpha) {
+                alpha = eval;
+                updatePv(ply, move);
+            }
+            if (alpha >= beta) {
+                if (isQuiet)
+                    history.update(ply, board.lastMove(), move, depth, quietsSearched[ply], quietCount);
                 break;
+            }
+            if (isQuiet)
+                quietsSearched[ply][quietCount++] = move;
         }
 
+        // Checkmate or stalemate. Futility pruning never skips the first move, so
+        // no move was searched only if there was none.
+        if (moveCount == 0)
+            return inCheck ? -Evaluate.CHECKMATE_SCORE + ply : Evaluate.DRAW_SCORE;
+
         // Save eval to transposition table
-        transpositionTable.put(hash, new TranspositionEntry(maxEval, depth));
+        int bound = maxEval <= alphaOrig ? TranspositionTable.UPPER
+                : maxEval >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        transpositionTable.store(hash, bestMove, scoreToTT(maxEval, ply), depth, bound);
         return maxEval;
     }
 
-    private static class MoveComparator implements Comparator<Move> {
-        private Bitboard board;
-
-        public MoveComparator(Bitboard board) {
-            this.board = board;
-        }
+    // Mate scores are stored relative to the node rather than the root, so that
+    // they stay right when the position is reached at another ply
+    private static int scoreToTT(int score, int ply) {
+        if (score >= MATE_BOUND)
+            return score + ply;
+        if (score <= -MATE_BOUND)
+            return score - ply;
+        return score;
+    }
 
-        @Override
-        public int compare(Move m1, Move m2) {
-            // Prioritize capture
-            if (m1.isCapture() && !m2.isCapture())
-                return -1;
-            if (!m1.isCapture() && m2.isCapture())
-                return 1;
-
-            // Prioritize promotion
-            if (m1.isPromotion() && !m2.isPromotion())
-                return -1;
-            if (!m1.isPromotion() && m2.isPromotion())
-                return 1;
-
-            // Prioritize checks
-            if (givesCheck(m1) && !givesCheck(m2))
-                return -1;
-            if (!givesCheck(m1) && givesCheck(m2))
-                return 1;
+    private static int scoreFromTT(int score, int ply) {
+        if (score >= MATE_BOUND)
+            return score - ply;
+        if (score <= -MATE_BOUND)
+            return score + ply;
+        return score;
+    }
 
+    // Search captures and promotions only, until the position is quiet, so that
+    // the evaluation is never taken in the middle of an exchange. The side to
+    // move can always "stand pat" on the static evaluation instead of capturing,
+    // except in check.
+    private int quiescence(Bitboard board, int ply, int alpha, int beta) {
+        pvLength[ply] = ply;
+        if (++nodes % POLL_INTERVAL == 0)
+            stopped = control.report(POLL_INTERVAL);
+        if (stopped)
             return 0;
+        if (ply >= MAX_PLY - 1)
+            return evaluate(board);
+
+        boolean inCheck = QUIESCENCE_CHECK_EVASIONS && board.isCheck();
+        MovePicker picker = picker(ply);
+        int maxEval;
+        int standPat = 0;
+        if (inCheck) {
+            // No standing pat in check, every evasion gets searched
+            maxEval = -INFINITY;
+            picker.init(board, PackedMove.NONE, ply);
+        } else {
+            standPat = evaluate(board);
+            if (standPat >= beta)
+                return standPat;
+            // Delta pruning: even winning a queen would not raise alpha
+            if (standPat + SEE.value(4) + DELTA_MARGIN < alpha)
+                return standPat;
+            alpha = Math.max(alpha, standPat);
+            maxEval = standPat;
+            picker.initQuiescence(board);
         }
 
-        private boolean givesCheck(Move move) {
+        int moveCount = 0;
+        int move;
+        while ((move = picker.next()) != PackedMove.NONE) {
+            moveCount++;
+            // Delta pruning: this capture cannot bring the score back up to alpha
+            if (!inCheck && !PackedMove.isPromotion(move)
+                    && standPat + SEE.value(PackedMove.captured(move)) + DELTA_MARGIN <= alpha)
+                continue;
+
             board.makeMove(move);
-            boolean isCheck = board.isOpponentKingInCheck();
+            int eval = -quiescence(board, ply + 1, -beta, -alpha);
             board.undoMove();
-            return isCheck;
+            if (stopped)
+                return 0;
+
+            if (eval > maxEval)
+                maxEval = eval;
+            if (eval > alpha) {
+                alpha = eval;
+                updatePv(ply, move);
+            }
+            if (alpha >= beta)
+                break;
         }
-    }
 
-    private static class TranspositionEntry {
-        public int score;
-        public int depth;
+        // Checkmated
+        if (inCheck && moveCount == 0)
+            return -Evaluate.CHECKMATE_SCORE + ply;
+        return maxEval;
+    }
 
-        public TranspositionEntry(int score, int depth) {
-            this.score = score;
-            this.depth = depth;
+    // Static evaluation, from the shared cache when another node or thread has
+    // already computed it. Rule draws depend on the game history rather than the
+    // position, so they are checked first and never cached.
+    private int evaluate(Bitboard board) {
+        if (Evaluate.isDraw(board))
+            return Evaluate.DRAW_SCORE;
+        long key = board.zobristHash();
+        long entry = evalCache.probe(key);
+        evalProbes++;
+        if (entry != EvalCache.MISS) {
+            evalHits++;
+            return EvalCache.score(entry);
         }
+        int score = Evaluate.staticEval(board, pawnTable);
+        evalCache.store(key, score);
+        return score;
+    }
+
+    private MovePicker picker(int ply) {
+        if (pickers[ply] == null)
+            pickers[ply] = new MovePicker(history, see);
+        return pickers[ply];
     }
 }
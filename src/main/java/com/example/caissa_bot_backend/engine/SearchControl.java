@@ -0,0 +1,39 @@
+package com.example.caissa_bot_backend.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// State shared by all threads working on one search: the limits, the total node
+// count and the stop flag. Threads count nodes locally and only report here once
+// every Search.POLL_INTERVAL nodes, so the shared counter and the clock stay off
+// the hot path.
+public class SearchControl {
+    private final SearchLimits limits;
+    private final long stopTime;
+    private final AtomicLong nodes = new AtomicLong();
+    private volatile boolean stopped = false;
+
+    public SearchControl(SearchLimits limits) {
+        this.limits = limits;
+        this.stopTime = limits.stopTime(System.currentTimeMillis());
+    }
+
+    // Add nodes searched since the last report and tell whether to stop
+    public boolean report(long newNodes) {
+        long total = nodes.addAndGet(newNodes);
+        if ((limits.nodes > 0 && total >= limits.nodes) || System.currentTimeMillis() >= stopTime)
+            stopped = true;
+        return stopped;
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public long nodes() {
+        return nodes.get();
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.caissa_bot_backend.engine;
+
+// When to stop searching. Any combination can be set, the search stops at the
+// first one reached. Unset limits are 0.
+public class SearchLimits {
+    public static final int MAX_DEPTH = 64;
+
+    // Deepest iteration to search
+    public int depth = MAX_DEPTH;
+    // Thinking time in milliseconds
+    public long movetime = 0;
+    // Number of nodes, summed over all search threads
+    public long nodes = 0;
+    // Absolute time (epoch milliseconds) by which the search must be done
+    public long deadline = 0;
+
+    public static SearchLimits depth(int depth) {
+        SearchLimits limits = new SearchLimits();
+        limits.depth = depth;
+        return limits;
+    }
+
+    // Time at which a search started at the given time has to stop, or
+    // Long.MAX_VALUE without any time limit
+    public long stopTime(long start) {
+        long stopTime = Long.MAX_VALUE;
+        if (movetime > 0)
+            stopTime = start + movetime;
+        if (deadline > 0)
+            stopTime = Math.min(stopTime, deadline);
+        return stopTime;
+    }
+
+    @Override
+    public String toString() {
+        return "depth " + depth + ", movetime " + movetime + ", nodes " + nodes + ", deadline " + deadline;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.caissa_bot_backend.engine;
+
+import com.example.caissa_bot_backend.board_representation.PackedMove;
+
+// Fixed-size transposition table shared by all search threads without locking.
+//
+// Every slot is two longs, the key XOR the data and the data, so an entry torn by
+// two threads writing the same slot at once fails the key check and reads as a
+// miss. Slots are grouped in buckets of four (64 bytes, one cache line), and a
+// position may go in any slot of its bucket.
+//
+// Data layout:
+// bits 0-27 best move (PackedMove)
+// bits 28-47 score
+// bits 48-55 depth
+// bits 56-57 bound: whether the score is exact or only a bound on the real one
+// bits 58-63 generation of the search that stored it (never 0, so a stored
+// entry is never 0 either)
+public class TranspositionTable {
+    public static final long MISS = 0L;
+
+    // The search failed low (score is an upper bound) or high (a lower bound)
+    public static final int EXACT = 0;
+    public static final int LOWER = 1;
+    public static final int UPPER = 2;
+
+    private static final int BUCKET_SIZE = 4;
+    private static final int SLOT_LONGS = 2;
+    private static final int SCORE_OFFSET = 1 << 19;
+    // Generations run 1..63 and wrap around; ages are counted over the same cycle
+    private static final int GENERATIONS = 63;
+    // Largest table a long[] can hold: 2^27 buckets of 8 longs
+    public static final int MAX_SIZE_MB = 8192;
+
+    private final long[] table;
+    private final long bucketMask;
+    // Read by every search thread, advanced by each new search. Concurrent
+    // searches (several requests at once) share the table and its generation,
+    // so each one ages the other's entries by a step; that only costs
+    // replacement quality, as every entry is still checked against its key.
+    private volatile int generation = 1;
+
+    public TranspositionTable(int sizeMb) {
+        if (sizeMb > MAX_SIZE_MB)
+            throw new IllegalArgumentException("Transposition table size " + sizeMb + " MB is above the maximum of "
+                    + MAX_SIZE_MB + " MB");
+        long slots = Math.max((long) sizeMb * 1024 * 1024 / (SLOT_LONGS * Long.BYTES), BUCKET_SIZE);
+        // Round down to a power of two buckets so that the index is a mask
+        long buckets = Long.highestOneBit(slots / BUCKET_SIZE);
+        table = new long[(int) (buckets * BUCKET_SIZE * SLOT_LONGS)];
+        bucketMask = buckets - 1;
+    }
+
+    // Called once per search so that entries from older searches get replaced first
+    public synchronized void newSearch() {
+        generation = generation % GENERATIONS + 1;
+    }
+
+    // Data of the entry stored for the key, or MISS
+    public long probe(long key) {
+        int index = bucketIndex(key);
+        for (int i = index; i < index + BUCKET_SIZE * SLOT_LONGS; i += SLOT_LONGS) {
+            long data = table[i + 1];
+            if (data != MISS && (table[i] ^ data) == key)
+                return data;
+        }
+        return MISS;
+    }
+
+    public void store(long key, int move, int score, int depth, int bound) {
+        int index = bucketIndex(key);
+        int replace = index;
+        int replaceValue = Integer.MAX_VALUE;
+        for (int i = index; i < index + BUCKET_SIZE * SLOT_LONGS; i += SLOT_LONGS) {
+            long data = table[i + 1];
+            if (data == MISS || (table[i] ^ data) == key) {
+                // Keep the old best move rather than losing it
+                if (move == PackedMove.NONE && data != MISS)
+                    move = move(data);
+                replace = i;
+                break;
+            }
+            // Prefer replacing shallow entries and entries from older searches
+            int age = (generation - generation(data) + GENERATIONS) % GENERATIONS;
+            int value = depth(data) - 8 * age;
+            if (value < replaceValue) {
+                replaceValue = value;
+                replace = i;
+            }
+        }
+
+        long data = (move & 0xFFFFFFFL)
+                | ((long) (score + SCORE_OFFSET) << 28)
+                | ((long) Math.min(Math.max(depth, 0), 255) << 48)
+                | ((long) bound << 56)
+                | ((long) generation << 58);
+        table[replace] = key ^ data;
+        table[replace + 1] = data;
+    }
+
+    public static int move(long data) {
+        return (int) (data & 0xFFFFFFFL);
+    }
+
+    public static int score(long data) {
+        return (int) ((data >>> 28) & 0xFFFFF) - SCORE_OFFSET;
+    }
+
+    public static int depth(long data) {
+        return (int) ((data >>> 48) & 0xFF);
+    }
+
+    public static int bound(long data) {
+        return (int) ((data >>> 56) & 0x3);
+    }
+
+    private static int generation(long data) {
+        return (int) (data >>> 58);
+    }
+
+    private int bucketIndex(long key) {
+        return (int) (key & bucketMask) * BUCKET_SIZE * SLOT_LONGS;
+    }
+}
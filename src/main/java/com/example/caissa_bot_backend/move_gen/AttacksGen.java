@@ -13,6 +13,11 @@ public class AttacksGen {
     public static long[] whitePawnAttacks = new long[64];
     public static long[] blackPawnAttacks = new long[64];
 
+    // Squares strictly between two aligned squares, and the full line through them
+    // (both empty when the squares are not on a common rank, file or diagonal)
+    public static long[][] between = new long[64][64];
+    public static long[][] line = new long[64][64];
+
     // Pre-compute the loopup attacks table for knight and king
     static {
         for (int i = 0; i < 64; i++) {
@@ -21,6 +26,34 @@ public class AttacksGen {
             whitePawnAttacks[i] = generateWhitePawnAttack(i);
             blackPawnAttacks[i] = generateBlackPawnAttack(i);
         }
+        generateLines();
+    }
+
+    private static void generateLines() {
+        int[][] directions = { { 0, 1 }, { 1, 0 }, { 1, 1 }, { 1, -1 } };
+        for (int square = 0; square < 64; square++) {
+            int r = square / 8, c = square % 8;
+            for (int[] d : directions) {
+                // Whole line through the square in this direction
+                long full = 1L << square;
+                for (int sign = -1; sign <= 1; sign += 2) {
+                    for (int i = r + sign * d[0], j = c + sign * d[1]; i >= 0 && i < 8 && j >= 0
+                            && j < 8; i += sign * d[0], j += sign * d[1])
+                        full |= 1L << (8 * i + j);
+                }
+
+                for (int sign = -1; sign <= 1; sign += 2) {
+                    long ray = 0L;
+                    for (int i = r + sign * d[0], j = c + sign * d[1]; i >= 0 && i < 8 && j >= 0
+                            && j < 8; i += sign * d[0], j += sign * d[1]) {
+                        int target = 8 * i + j;
+                        between[square][target] = ray;
+                        line[square][target] = full;
+                        ray |= 1L << target;
+                    }
+                }
+            }
+        }
     }
 
     // Generate the possible knight attacks on 1 of the 64 squares
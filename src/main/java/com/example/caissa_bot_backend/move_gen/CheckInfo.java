@@ -0,0 +1,106 @@
+package com.example.caissa_bot_backend.move_gen;
+
+import com.example.caissa_bot_backend.board_representation.Bitboard;
+import com.example.caissa_bot_backend.board_representation.PackedMove;
+
+// Tells whether a move of the side to move gives check, without playing it.
+// For each piece type the squares it would check the enemy king from are computed
+// once per position, together with the own pieces that are the only blocker
+// between an own slider and the enemy king (moving one off the line uncovers a
+// check).
+public class CheckInfo {
+    private Bitboard bitboard;
+    private boolean isWhite;
+    private int enemyKing;
+    private final long[] checkSquares = new long[6];
+    private long discoveredCheckers;
+
+    public void init(Bitboard bitboard) {
+        this.bitboard = bitboard;
+        isWhite = bitboard.isWhiteToMove();
+        enemyKing = Long.numberOfTrailingZeros(bitboard.pieces[isWhite ? 11 : 5]);
+
+        long occupancy = bitboard.occupancy;
+        checkSquares[0] = isWhite ? AttacksGen.blackPawnAttacks[enemyKing] : AttacksGen.whitePawnAttacks[enemyKing];
+        checkSquares[1] = AttacksGen.knightAttacks[enemyKing];
+        checkSquares[2] = MagicBitboards.getBishopAttacks(enemyKing, occupancy);
+        checkSquares[3] = MagicBitboards.getRookAttacks(enemyKing, occupancy);
+        checkSquares[4] = checkSquares[2] | checkSquares[3];
+        checkSquares[5] = 0L;
+
+        long ownOccupancy = isWhite ? bitboard.whiteOccupancy : bitboard.blackOccupancy;
+        long ownQueens = bitboard.pieces[isWhite ? 4 : 10];
+        long snipers = (MagicBitboards.getRookAttacks(enemyKing, 0L) & (bitboard.pieces[isWhite ? 3 : 9] | ownQueens))
+                | (MagicBitboards.getBishopAttacks(enemyKing, 0L) & (bitboard.pieces[isWhite ? 2 : 8] | ownQueens));
+
+        discoveredCheckers = 0L;
+        while (snipers != 0) {
+            int sniper = Long.numberOfTrailingZeros(snipers);
+            long blockers = AttacksGen.between[enemyKing][sniper] & occupancy;
+            if (Long.bitCount(blockers) == 1)
+                discoveredCheckers |= blockers & ownOccupancy;
+            snipers &= snipers - 1;
+        }
+    }
+
+    public boolean givesCheck(int move) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+
+        if (PackedMove.isCastling(move))
+            return castlingGivesCheck(move);
+
+        // Direct check
+        if (PackedMove.isPromotion(move)) {
+            long occupancy = bitboard.occupancy & ~(1L << from);
+            if ((attacks(PackedMove.promotion(move) % 6, to, occupancy) & (1L << enemyKing)) != 0)
+                return true;
+        } else if ((checkSquares[PackedMove.piece(move) % 6] & (1L << to)) != 0) {
+            return true;
+        }
+
+        // Discovered check
+        if ((discoveredCheckers & (1L << from)) != 0 && (AttacksGen.line[enemyKing][from] & (1L << to)) == 0)
+            return true;
+
+        // En passant removes two pawns from their squares, which can open a line
+        // that no single blocker mask covers
+        if (PackedMove.isEnPassant(move)) {
+            long occupancy = (bitboard.occupancy & ~(1L << from) & ~(1L << PackedMove.capturedSquare(move)))
+                    | (1L << to);
+            return sliderAttacksKing(occupancy);
+        }
+        return false;
+    }
+
+    // Only the rook can give check after castling
+    private boolean castlingGivesCheck(int move) {
+        boolean isShort = PackedMove.isShortCastle(move);
+        int kingFrom = PackedMove.from(move);
+        int kingTo = PackedMove.to(move);
+        int rookFrom = isShort ? kingFrom + 3 : kingFrom - 4;
+        int rookTo = isShort ? kingFrom + 1 : kingFrom - 1;
+        long occupancy = (bitboard.occupancy & ~(1L << kingFrom) & ~(1L << rookFrom)) | (1L << kingTo)
+                | (1L << rookTo);
+        return (MagicBitboards.getRookAttacks(rookTo, occupancy) & (1L << enemyKing)) != 0;
+    }
+
+    private boolean sliderAttacksKing(long occupancy) {
+        long ownQueens = bitboard.pieces[isWhite ? 4 : 10];
+        return (MagicBitboards.getBishopAttacks(enemyKing, occupancy) & (bitboard.pieces[isWhite ? 2 : 8] | ownQueens)) != 0
+                || (MagicBitboards.getRookAttacks(enemyKing, occupancy) & (bitboard.pieces[isWhite ? 3 : 9] | ownQueens)) != 0;
+    }
+
+    private long attacks(int type, int square, long occupancy) {
+        switch (type) {
+            case 1:
+                return AttacksGen.knightAttacks[square];
+            case 2:
+                return MagicBitboards.getBishopAttacks(square, occupancy);
+            case 3:
+                return MagicBitboards.getRookAttacks(square, occupancy);
+            default:
+                return MagicBitboards.getQueenAttacks(square, occupancy);
+        }
+    }
+}
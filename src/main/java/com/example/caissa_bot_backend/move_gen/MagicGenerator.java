@@ -0,0 +1,91 @@
+package com.example.caissa_bot_backend.move_gen;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+// Offline tool that searches magic numbers for every square and writes them to
+// MagicNumbers.java, so the engine never has to search for them at start up.
+// Run with: make magics
+public class MagicGenerator {
+    private static final String OUTPUT = "src/main/java/com/example/caissa_bot_backend/move_gen/MagicNumbers.java";
+
+    public static void main(String... args) throws IOException {
+        String output = args.length > 0 ? args[0] : OUTPUT;
+        // Fixed seed so that the same numbers come out every run
+        Random rand = new Random(args.length > 1 ? Long.parseLong(args[1]) : 0L);
+
+        long[] rookMagics = new long[64];
+        long[] bishopMagics = new long[64];
+        for (int i = 0; i < 64; i++) {
+            long rookMask = SliderAttacks.rookRelevantOccupancy(i);
+            long bishopMask = SliderAttacks.bishopRelevantOccupancy(i);
+            rookMagics[i] = findMagic(i, rookMask, true, rand);
+            bishopMagics[i] = findMagic(i, bishopMask, false, rand);
+            System.out.println("Found magics for square " + i);
+        }
+
+        try (PrintWriter writer = new PrintWriter(new FileWriter(output))) {
+            writer.println("package com.example.caissa_bot_backend.move_gen;");
+            writer.println();
+            writer.println("// Magic numbers for the slider attack tables, one per square.");
+            writer.println("// Generated by MagicGenerator (make magics), do not edit by hand.");
+            writer.println("public class MagicNumbers {");
+            writeArray(writer, "ROOK", rookMagics);
+            writer.println();
+            writeArray(writer, "BISHOP", bishopMagics);
+            writer.println("}");
+        }
+        System.out.println("Magic numbers written to " + output);
+    }
+
+    private static long findMagic(int square, long mask, boolean isRook, Random rand) {
+        long[] blockers = SliderAttacks.blockerPermutations(mask);
+        long[] attacks = new long[blockers.length];
+        for (int i = 0; i < blockers.length; i++) {
+            attacks[i] = isRook ? SliderAttacks.rookAttacks(square, blockers[i])
+                    : SliderAttacks.bishopAttacks(square, blockers[i]);
+        }
+
+        int shift = 64 - Long.bitCount(mask);
+        long[] used = new long[1 << (64 - shift)];
+
+        while (true) {
+            long magic = randomMagic(rand);
+            // Filter out candidates that spread the mask into too few high bits
+            if (Long.bitCount((mask * magic) & 0xFF00000000000000L) < 6)
+                continue;
+
+            Arrays.fill(used, 0L);
+            boolean fail = false;
+            for (int i = 0; i < blockers.length && !fail; i++) {
+                int index = (int) ((blockers[i] * magic) >>> shift);
+                if (used[index] == 0L)
+                    used[index] = attacks[i];
+                else if (used[index] != attacks[i])
+                    fail = true;
+            }
+
+            if (!fail)
+                return magic;
+        }
+    }
+
+    private static long randomMagic(Random rand) {
+        // Generate a random 64-bit number with a few bits set
+        return rand.nextLong() & rand.nextLong() & rand.nextLong();
+    }
+
+    private static void writeArray(PrintWriter writer, String name, long[] magics) {
+        writer.println("    public static final long[] " + name + " = {");
+        for (int i = 0; i < magics.length; i += 4) {
+            StringBuilder line = new StringBuilder("           ");
+            for (int j = i; j < i + 4; j++)
+                line.append(String.format(" 0x%016XL,", magics[j]));
+            writer.println(line);
+        }
+        writer.println("    };");
+    }
+}
@@ -1,114 +1,267 @@
 package com.example.caissa_bot_backend.move_gen;
 
-import java.util.ArrayList;
-
 import com.example.caissa_bot_backend.board_representation.Bitboard;
-import com.example.caissa_bot_backend.board_representation.Move;
-
+import com.example.caissa_bot_backend.board_representation.MoveList;
+import com.example.caissa_bot_backend.board_representation.PackedMove;
+
+// Legal move generator. Checkers, pinned pieces and the squares that resolve a
+// check are computed once per position, so every generated move is legal without
+// playing it. Only en passant, which can expose the king along the rank of both
+// pawns, is verified by making the move.
+//
+// Captures (with all promotions) and quiet moves can be generated separately, so
+// the search only pays for quiet moves at nodes that do not cut off early.
 public class MoveGen {
     private static final long RANK_4 = 0x000000FF00000000L;
     private static final long RANK_5 = 0x00000000FF000000L;
+    private static final long PROMOTION_RANKS = 0xFF000000000000FFL;
 
     private Bitboard bitboard;
 
+    // State of the position being generated for
+    private int kingSquare;
+    private long checkers;
+    private long pinned;
+
     public MoveGen(Bitboard bitboard) {
         this.bitboard = bitboard;
     }
 
-    public ArrayList<Move> generatePseudoLegalMoves(boolean isWhite) {
-        // pseudoMoves have not accounted for king being checked after the moves are
-        // made
-        ArrayList<Move> pseudoMoves = new ArrayList<Move>();
+    public MoveList generateLegalMoves(boolean isWhite, MoveList moves) {
+        return generate(isWhite, moves, true, true);
+    }
+
+    // Captures, en passant and promotions
+    public MoveList generateCaptures(boolean isWhite, MoveList moves) {
+        return generate(isWhite, moves, true, false);
+    }
+
+    // Everything generateCaptures leaves out, castling included
+    public MoveList generateQuiets(boolean isWhite, MoveList moves) {
+        return generate(isWhite, moves, false, true);
+    }
+
+    private MoveList generate(boolean isWhite, MoveList moves, boolean captures, boolean quiets) {
+        moves.clear();
+
+        long ownOccupancy = isWhite ? bitboard.whiteOccupancy : bitboard.blackOccupancy;
+        long opponentOccupancy = isWhite ? bitboard.blackOccupancy : bitboard.whiteOccupancy;
+        kingSquare = Long.numberOfTrailingZeros(bitboard.pieces[isWhite ? 5 : 11]);
+        checkers = attackersTo(kingSquare, !isWhite, bitboard.occupancy);
+
+        long typeMask = (captures ? opponentOccupancy : 0L) | (quiets ? bitboard.emptyOccupancy : 0L);
+        generateKingMoves(isWhite, moves, typeMask & ~ownOccupancy);
+
+        // In double check only the king can move
+        if (Long.bitCount(checkers) > 1)
+            return moves;
+
+        // When in check, other pieces must capture the checker or block it
+        long checkMask = -1L;
+        if (checkers != 0) {
+            int checker = Long.numberOfTrailingZeros(checkers);
+            checkMask = AttacksGen.between[kingSquare][checker] | checkers;
+        }
+        pinned = pinnedPieces(isWhite);
+
+        long targets = typeMask & ~ownOccupancy & checkMask;
+        // Pushes are sorted by whether they promote rather than by the target square
+        long pushTargets = checkMask & ((captures ? PROMOTION_RANKS : 0L) | (quiets ? ~PROMOTION_RANKS : 0L));
+        generatePawnMoves(isWhite, moves, targets, pushTargets, captures, quiets);
+        generateKnightMoves(isWhite, moves, targets);
+        generateBishopMoves(isWhite, moves, targets);
+        generateRookMoves(isWhite, moves, targets);
+        generateQueenMoves(isWhite, moves, targets);
+        if (checkers == 0 && quiets)
+            generateCastlingMoves(isWhite, moves);
+
+        return moves;
+    }
+
+    // Whether a move produced in some other position, such as a hash or killer
+    // move, is legal here. Cheaper than generating all moves to look for it.
+    public boolean isLegal(boolean isWhite, int move) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        int piece = PackedMove.piece(move);
+        if (move == PackedMove.NONE || (piece < 6) != isWhite || bitboard.getPieceAt(from) != piece)
+            return false;
+
+        if (PackedMove.isCastling(move)) {
+            if (move == shortCastle(isWhite))
+                return !bitboard.isKingInCheck(isWhite) && canShortCastle(isWhite);
+            if (move == longCastle(isWhite))
+                return !bitboard.isKingInCheck(isWhite) && canLongCastle(isWhite);
+            return false;
+        }
+
+        int type = piece % 6;
+        if (PackedMove.isEnPassant(move)) {
+            if (type != 0 || to != bitboard.enPassantSquare)
+                return false;
+        } else if (bitboard.getPieceAt(to) != PackedMove.captured(move)) {
+            return false;
+        }
+
+        long toMask = 1L << to;
+        boolean pseudoLegal;
+        switch (type) {
+            case 0:
+                pseudoLegal = isPseudoLegalPawnMove(isWhite, move, from, to);
+                break;
+            case 1:
+                pseudoLegal = (AttacksGen.knightAttacks[from] & toMask) != 0;
+                break;
+            case 2:
+                pseudoLegal = (MagicBitboards.getBishopAttacks(from, bitboard.occupancy) & toMask) != 0;
+                break;
+            case 3:
+                pseudoLegal = (MagicBitboards.getRookAttacks(from, bitboard.occupancy) & toMask) != 0;
+                break;
+            case 4:
+                pseudoLegal = (MagicBitboards.getQueenAttacks(from, bitboard.occupancy) & toMask) != 0;
+                break;
+            default:
+                pseudoLegal = (AttacksGen.kingAttacks[from] & toMask) != 0;
+        }
+        if (!pseudoLegal)
+            return false;
+
+        // Same rule as the generator: en passant is played to look at the king
+        if (PackedMove.isEnPassant(move)) {
+            bitboard.makeMove(move);
+            boolean legal = !bitboard.isKingInCheck(isWhite);
+            bitboard.undoMove();
+            return legal;
+        }
+
+        kingSquare = Long.numberOfTrailingZeros(bitboard.pieces[isWhite ? 5 : 11]);
+        if (type == 5)
+            return attackersTo(to, !isWhite, bitboard.occupancy & ~(1L << from)) == 0;
+
+        // Other pieces must capture or block a single checker
+        checkers = attackersTo(kingSquare, !isWhite, bitboard.occupancy);
+        if (checkers != 0) {
+            if (Long.bitCount(checkers) > 1)
+                return false;
+            int checker = Long.numberOfTrailingZeros(checkers);
+            if (((AttacksGen.between[kingSquare][checker] | checkers) & toMask) == 0)
+                return false;
+        }
+
+        // Staying on the line through the king is safe even when pinned
+        if ((AttacksGen.line[kingSquare][from] & toMask) != 0)
+            return true;
+        pinned = pinnedPieces(isWhite);
+        return !isPinnedAway(from, to);
+    }
+
+    private boolean isPseudoLegalPawnMove(boolean isWhite, int move, int from, int to) {
+        if (PackedMove.isPromotion(move) != ((PROMOTION_RANKS & (1L << to)) != 0))
+            return false;
 
-        pseudoMoves.addAll(generatePawnMoves(isWhite));
-        pseudoMoves.addAll(generateKnightMoves(isWhite));
-        pseudoMoves.addAll(generateBishopMoves(isWhite));
-        pseudoMoves.addAll(generateRookMoves(isWhite));
-        pseudoMoves.addAll(generateQueenMoves(isWhite));
-        pseudoMoves.addAll(generateKingMoves(isWhite));
-        pseudoMoves.addAll(generateCastlingMoves(isWhite));
+        int forward = isWhite ? -8 : 8;
+        if (PackedMove.isCapture(move)) {
+            long attacks = isWhite ? AttacksGen.whitePawnAttacks[from] : AttacksGen.blackPawnAttacks[from];
+            return (attacks & (1L << to)) != 0;
+        }
+        if (PackedMove.isDoublePush(move)) {
+            long startRank = isWhite ? 0x00FF000000000000L : 0x000000000000FF00L;
+            return (startRank & (1L << from)) != 0 && to == from + 2 * forward
+                    && !bitboard.isOccuppied(from + forward);
+        }
+        return to == from + forward;
+    }
 
-        return pseudoMoves;
+    // Own pieces that are the only blocker between the king and an enemy slider
+    private long pinnedPieces(boolean isWhite) {
+        long ownOccupancy = isWhite ? bitboard.whiteOccupancy : bitboard.blackOccupancy;
+        long opponentQueens = bitboard.pieces[isWhite ? 10 : 4];
+        long snipers = (MagicBitboards.getRookAttacks(kingSquare, 0L) & (bitboard.pieces[isWhite ? 9 : 3] | opponentQueens))
+                | (MagicBitboards.getBishopAttacks(kingSquare, 0L) & (bitboard.pieces[isWhite ? 8 : 2] | opponentQueens));
+
+        long pinnedPieces = 0L;
+        while (snipers != 0) {
+            int sniper = Long.numberOfTrailingZeros(snipers);
+            long blockers = AttacksGen.between[kingSquare][sniper] & bitboard.occupancy;
+            if (Long.bitCount(blockers) == 1)
+                pinnedPieces |= blockers & ownOccupancy;
+            snipers &= snipers - 1;
+        }
+        return pinnedPieces;
+    }
+
+    // A pinned piece may only move along the line through its king and pinner
+    private boolean isPinnedAway(int from, int to) {
+        return (pinned & (1L << from)) != 0 && (AttacksGen.line[kingSquare][from] & (1L << to)) == 0;
     }
 
-    public ArrayList<Move> generatePawnMoves(boolean isWhite) {
-        ArrayList<Move> possibleMoves = new ArrayList<>();
+    private long attackersTo(int square, boolean byWhite, long occupancy) {
+        long opponentOccupancy = byWhite ? bitboard.whiteOccupancy : bitboard.blackOccupancy;
+        return bitboard.attackersTo(square, occupancy) & opponentOccupancy;
+    }
+
+    private void generatePawnMoves(boolean isWhite, MoveList possibleMoves, long targets, long pushTargets,
+            boolean captures, boolean quiets) {
         int currPiece = isWhite ? 0 : 6;
-        long singlePushs = isWhite ? wSinglePushTargets() : bSinglePushTargets();
-        long doublePushs = isWhite ? wDblPushTargets() : bDblPushTargets();
+        long singlePushs = (isWhite ? wSinglePushTargets() : bSinglePushTargets()) & pushTargets;
+        long doublePushs = quiets ? (isWhite ? wDblPushTargets() : bDblPushTargets()) & pushTargets : 0L;
 
         while (singlePushs != 0) {
             int to = Long.numberOfTrailingZeros(singlePushs);
-            if (isWhite) {
-                if (to / 8 == 0)
-                    for (int i = 1; i < 5; i++)
-                        possibleMoves.add(new Move(to + 8, to, currPiece, -1, false, i));
-                else
-                    possibleMoves.add(new Move(to + 8, to, currPiece, -1, false, -1));
-            } else {
-                if (to / 8 == 7)
-                    for (int i = 7; i < 11; i++)
-                        possibleMoves.add(new Move(to - 8, to, currPiece, -1, false, i));
-                else
-                    possibleMoves.add(new Move(to - 8, to, currPiece, -1, false, -1));
-            }
+            int from = isWhite ? to + 8 : to - 8;
+            if (!isPinnedAway(from, to))
+                addPawnMoves(possibleMoves, from, to, currPiece, -1, isWhite);
             singlePushs &= singlePushs - 1;
         }
 
         while (doublePushs != 0) {
             int to = Long.numberOfTrailingZeros(doublePushs);
-            if (isWhite) {
-                possibleMoves.add(new Move(to + 16, to, 0, -1, false, -1));
-            } else {
-                possibleMoves.add(new Move(to - 16, to, 6, -1, false, -1));
-            }
+            int from = isWhite ? to + 16 : to - 16;
+            if (!isPinnedAway(from, to))
+                possibleMoves.add(PackedMove.encode(from, to, currPiece, -1, -1, PackedMove.DOUBLE_PUSH));
             doublePushs &= doublePushs - 1;
         }
 
-        // En Passant
         long pawns = bitboard.pieces[currPiece];
         long opponentOccupancy = isWhite ? bitboard.blackOccupancy : bitboard.whiteOccupancy;
+        int enPassantSquare = bitboard.enPassantSquare;
 
         while (pawns != 0) {
             int from = Long.numberOfTrailingZeros(pawns);
-
-            int enPassantSquare = bitboard.enPassantSquare;
-            if (enPassantSquare != -1) {
-                // System.out.println("En passant square: " + enPassantSquare);
-                if (isWhite && (from / 8 == 3) && Math.abs(enPassantSquare % 8 - from % 8) == 1) {
-                    possibleMoves.add(new Move(from, enPassantSquare, 0, enPassantSquare + 8, true, -1));
-                }
-                if (!isWhite && (from / 8 == 4) && Math.abs(enPassantSquare % 8 - from % 8) == 1) {
-                    possibleMoves.add(new Move(from, enPassantSquare, 6, enPassantSquare - 8, true, -1));
-                }
-            }
+            long attacks = isWhite ? AttacksGen.whitePawnAttacks[from] : AttacksGen.blackPawnAttacks[from];
 
             // Capture
-            long possible = isWhite ? AttacksGen.whitePawnAttacks[from] : AttacksGen.blackPawnAttacks[from];
-            possible &= opponentOccupancy;
-
+            long possible = attacks & opponentOccupancy & targets;
             while (possible != 0) {
                 int to = Long.numberOfTrailingZeros(possible);
-                if (isWhite) {
-                    if (to / 8 == 0)
-                        for (int i = 1; i < 5; i++)
-                            possibleMoves.add(new Move(from, to, currPiece, to, false, i));
-                    else
-                        possibleMoves.add(new Move(from, to, currPiece, to, false, -1));
-                } else {
-                    if (to / 8 == 7)
-                        for (int i = 7; i < 11; i++)
-                            possibleMoves.add(new Move(from, to, currPiece, to, false, i));
-                    else
-                        possibleMoves.add(new Move(from, to, currPiece, to, false, -1));
-                }
-                // possibleMoves.add(new Move(from, to, currPiece));
+                if (!isPinnedAway(from, to))
+                    addPawnMoves(possibleMoves, from, to, currPiece, bitboard.getPieceAt(to), isWhite);
                 possible &= possible - 1;
             }
+
+            // En Passant: rare enough to simply play it and look at the king
+            if (captures && enPassantSquare != -1 && (attacks & (1L << enPassantSquare)) != 0) {
+                int move = PackedMove.encode(from, enPassantSquare, currPiece, isWhite ? 6 : 0, -1,
+                        PackedMove.EN_PASSANT);
+                bitboard.makeMove(move);
+                if (!bitboard.isKingInCheck(isWhite))
+                    possibleMoves.add(move);
+                bitboard.undoMove();
+            }
             pawns &= pawns - 1;
         }
+    }
 
-        return possibleMoves;
+    private void addPawnMoves(MoveList possibleMoves, int from, int to, int piece, int captured,
+            boolean isWhite) {
+        if (isWhite ? to / 8 == 0 : to / 8 == 7) {
+            int first = isWhite ? 1 : 7;
+            for (int i = first; i < first + 4; i++)
+                possibleMoves.add(PackedMove.encode(from, to, piece, captured, i, 0));
+        } else {
+            possibleMoves.add(PackedMove.encode(from, to, piece, captured, -1, 0));
+        }
     }
 
     private long wSinglePushTargets() {
@@ -116,7 +269,7 @@ public class MoveGen {
     }
 
     private long wDblPushTargets() {
-        long singlePushs = wSinglePushTargets();
+        long singlePushs = (bitboard.pieces[0] >>> 8) & bitboard.emptyOccupancy;
         return (singlePushs >>> 8) & bitboard.emptyOccupancy & RANK_4;
     }
 
@@ -125,200 +278,122 @@ public class MoveGen {
     }
 
     private long bDblPushTargets() {
-        long singlePushs = bSinglePushTargets();
+        long singlePushs = (bitboard.pieces[6] << 8) & bitboard.emptyOccupancy;
         return (singlePushs << 8) & bitboard.emptyOccupancy & RANK_5;
     }
 
-    private ArrayList<Move> generateKnightMoves(boolean isWhite) {
-        ArrayList<Move> possibleMoves = new ArrayList<>();
+    private void generateKnightMoves(boolean isWhite, MoveList possibleMoves, long targets) {
         int currPiece = isWhite ? 1 : 7;
-        long knights = bitboard.pieces[currPiece];
-        long ownOccupancy = isWhite ? bitboard.whiteOccupancy : bitboard.blackOccupancy;
+        // A pinned knight can never move
+        long knights = bitboard.pieces[currPiece] & ~pinned;
 
-        // Get the leading 1s in the knights biboard
         while (knights != 0) {
             int from = Long.numberOfTrailingZeros(knights);
-            long possible = AttacksGen.knightAttacks[from] & ~ownOccupancy;
-
-            while (possible != 0) {
-                int to = Long.numberOfTrailingZeros(possible);
-                int capturedSquare = bitboard.isOccuppied(to) ? to : -1;
-                possibleMoves.add(new Move(from, to, currPiece, capturedSquare, false, -1));
-
-                possible &= possible - 1;
-            }
-
+            addMoves(possibleMoves, from, AttacksGen.knightAttacks[from] & targets, currPiece);
             knights &= knights - 1;
         }
-
-        return possibleMoves;
     }
 
-    private ArrayList<Move> generateBishopMoves(boolean isWhite) {
-        ArrayList<Move> possibleMoves = new ArrayList<>();
+    private void generateBishopMoves(boolean isWhite, MoveList possibleMoves, long targets) {
         int currPiece = isWhite ? 2 : 8;
         long bishops = bitboard.pieces[currPiece];
-        long ownOccupancy = isWhite ? bitboard.whiteOccupancy : bitboard.blackOccupancy;
 
         while (bishops != 0) {
             int from = Long.numberOfTrailingZeros(bishops);
-
-            long mask = MagicBitboards.bishopRelevantOccupancy[from];
-            long blockers = bitboard.occupancy & mask;
-            // Compute index for precomputed attack table:
-            // https://www.chessprogramming.org/Magic_Bitboards
-            int index = (int) ((blockers * MagicBitboards.bishopMagic[from]) >>> (64
-                    - Long.bitCount(MagicBitboards.bishopRelevantOccupancy[from])));
-            long attacks = MagicBitboards.bishopAttacks[from][index];
-            // Long attacks = MagicBitboards.computeBishopAttacks(from, blockers);
-
-            long possible = attacks & ~ownOccupancy;
-
-            while (possible != 0) {
-                int to = Long.numberOfTrailingZeros(possible);
-                int capturedSquare = bitboard.isOccuppied(to) ? to : -1;
-                possibleMoves.add(new Move(from, to, currPiece, capturedSquare, false, -1));
-                possible &= possible - 1;
-            }
+            addMoves(possibleMoves, from, MagicBitboards.getBishopAttacks(from, bitboard.occupancy) & pinMask(from) & targets,
+                    currPiece);
             bishops &= bishops - 1;
         }
-
-        return possibleMoves;
     }
 
-    private ArrayList<Move> generateRookMoves(boolean isWhite) {
-        ArrayList<Move> possibleMoves = new ArrayList<>();
+    private void generateRookMoves(boolean isWhite, MoveList possibleMoves, long targets) {
         int currPiece = isWhite ? 3 : 9;
         long rooks = bitboard.pieces[currPiece];
-        long ownOccupancy = isWhite ? bitboard.whiteOccupancy : bitboard.blackOccupancy;
 
         while (rooks != 0) {
             int from = Long.numberOfTrailingZeros(rooks);
-
-            long mask = MagicBitboards.rookRelevantOccupancy[from];
-            long blockers = bitboard.occupancy & mask;
-
-            // Compute index for precomputed attack table:
-            // https://www.chessprogramming.org/Magic_Bitboards
-            int relevantBits = Long.bitCount(MagicBitboards.rookRelevantOccupancy[from]);
-            int index = (int) ((blockers * MagicBitboards.rookMagic[from]) >>> (64
-                    - relevantBits));
-            long attacks = MagicBitboards.rookAttacks[from][index];
-            // long attacks = MagicBitboards.computeRookAttacks(from, blockers);
-
-            long possible = attacks & ~ownOccupancy;
-
-            while (possible != 0) {
-                int to = Long.numberOfTrailingZeros(possible);
-                int capturedSquare = bitboard.isOccuppied(to) ? to : -1;
-                possibleMoves.add(new Move(from, to, currPiece, capturedSquare, false, -1));
-                possible &= possible - 1;
-            }
+            addMoves(possibleMoves, from, MagicBitboards.getRookAttacks(from, bitboard.occupancy) & pinMask(from) & targets,
+                    currPiece);
             rooks &= rooks - 1;
         }
-
-        return possibleMoves;
     }
 
-    private ArrayList<Move> generateQueenMoves(boolean isWhite) {
-        ArrayList<Move> possibleMoves = new ArrayList<>();
+    private void generateQueenMoves(boolean isWhite, MoveList possibleMoves, long targets) {
         int currPiece = isWhite ? 4 : 10;
         long queens = bitboard.pieces[currPiece];
-        long ownOccupancy = isWhite ? bitboard.whiteOccupancy : bitboard.blackOccupancy;
 
         while (queens != 0) {
             int from = Long.numberOfTrailingZeros(queens);
-
-            long rookBlockers = bitboard.occupancy & MagicBitboards.rookRelevantOccupancy[from];
-            long bishopBlockers = bitboard.occupancy & MagicBitboards.bishopRelevantOccupancy[from];
-            // long blockers = rookBlockers | bishopBlockers;
-            // Compute index for precomputed attack table:
-            // https://www.chessprogramming.org/Magic_Bitboards
-            // int index = (int) ((blockers * MagicBitboards.queenMagic[from]) >>> (64
-            // - Long.bitCount(MagicBitboards.queenRelevantOccupancy[from])));
-            // long attacks = MagicBitboards.queenAttacks[from][index];
-
-            int relevantBishopBits = Long.bitCount(MagicBitboards.bishopRelevantOccupancy[from]);
-            int bishopIndex = (int) ((bishopBlockers * MagicBitboards.bishopMagic[from]) >>> (64
-                    - relevantBishopBits));
-            long bishopAttacks = MagicBitboards.bishopAttacks[from][bishopIndex];
-
-            int relevantRookBits = Long.bitCount(MagicBitboards.rookRelevantOccupancy[from]);
-            int index = (int) ((rookBlockers * MagicBitboards.rookMagic[from]) >>> (64
-                    - relevantRookBits));
-            long rookAttacks = MagicBitboards.rookAttacks[from][index];
-
-            long attacks = bishopAttacks | rookAttacks;
-            // long attacks = MagicBitboards.computeBishopAttacks(from, blockers)
-            // | MagicBitboards.computeRookAttacks(from, blockers);
-            long possible = attacks & ~ownOccupancy;
-
-            while (possible != 0) {
-                int to = Long.numberOfTrailingZeros(possible);
-                int capturedSquare = bitboard.isOccuppied(to) ? to : -1;
-                possibleMoves.add(new Move(from, to, currPiece, capturedSquare, false, -1));
-                possible &= possible - 1;
-            }
+            long attacks = MagicBitboards.getQueenAttacks(from, bitboard.occupancy);
+            addMoves(possibleMoves, from, attacks & pinMask(from) & targets, currPiece);
             queens &= queens - 1;
         }
-
-        return possibleMoves;
     }
 
-    private ArrayList<Move> generateKingMoves(boolean isWhite) {
-        ArrayList<Move> possibleMoves = new ArrayList<>();
-        int currPiece = isWhite ? 5 : 11;
-        long kings = bitboard.pieces[currPiece];
-        long ownOccupancy = isWhite ? bitboard.whiteOccupancy : bitboard.blackOccupancy;
-
-        while (kings != 0) {
-            int from = Long.numberOfTrailingZeros(kings);
-            long possible = AttacksGen.kingAttacks[from] & ~ownOccupancy;
-
-            while (possible != 0) {
-                int to = Long.numberOfTrailingZeros(possible);
-                int capturedSquare = bitboard.isOccuppied(to) ? to : -1;
-                possibleMoves.add(new Move(from, to, currPiece, capturedSquare, false, -1));
+    private long pinMask(int from) {
+        return (pinned & (1L << from)) != 0 ? AttacksGen.line[kingSquare][from] : -1L;
+    }
 
-                possible &= possible - 1;
-            }
+    private void addMoves(MoveList possibleMoves, int from, long possible, int currPiece) {
+        while (possible != 0) {
+            int to = Long.numberOfTrailingZeros(possible);
+            possibleMoves.add(PackedMove.encode(from, to, currPiece, bitboard.getPieceAt(to), -1, 0));
+            possible &= possible - 1;
+        }
+    }
 
-            kings &= kings - 1;
+    private void generateKingMoves(boolean isWhite, MoveList possibleMoves, long targets) {
+        int currPiece = isWhite ? 5 : 11;
+        long possible = AttacksGen.kingAttacks[kingSquare] & targets;
+        // Remove the king so that it cannot hide behind itself along a checking ray
+        long occupancy = bitboard.occupancy & ~(1L << kingSquare);
+
+        while (possible != 0) {
+            int to = Long.numberOfTrailingZeros(possible);
+            if (attackersTo(to, !isWhite, occupancy) == 0)
+                possibleMoves.add(PackedMove.encode(kingSquare, to, currPiece, bitboard.getPieceAt(to), -1, 0));
+            possible &= possible - 1;
         }
+    }
 
-        return possibleMoves;
+    private void generateCastlingMoves(boolean isWhite, MoveList possibleMoves) {
+        if (canShortCastle(isWhite))
+            possibleMoves.add(shortCastle(isWhite));
+        if (canLongCastle(isWhite))
+            possibleMoves.add(longCastle(isWhite));
     }
 
-    private ArrayList<Move> generateCastlingMoves(boolean isWhite) {
-        ArrayList<Move> possibleMoves = new ArrayList<>();
+    // Castling rights, empty squares between king and rook, and no attack on the
+    // squares the king crosses. Whether the king is in check is up to the caller.
+    private boolean canShortCastle(boolean isWhite) {
+        if (!(isWhite ? bitboard.canShortCastleWhite : bitboard.canShortCastleBlack))
+            return false;
+        boolean empty = isWhite
+                ? ((bitboard.occupancy & ((1L << 61) | (1L << 62))) == 0)
+                : ((bitboard.occupancy & ((1L << 5) | (1L << 6))) == 0);
+        return empty
+                && !bitboard.isSquareAttacked(isWhite ? 61 : 5, !isWhite)
+                && !bitboard.isSquareAttacked(isWhite ? 62 : 6, !isWhite);
+    }
 
-        boolean canShortCastle = isWhite ? bitboard.canShortCastleWhite : bitboard.canShortCastleBlack;
-        boolean canLongCastle = isWhite ? bitboard.canLongCastleWhite : bitboard.canLongCastleBlack;
+    private boolean canLongCastle(boolean isWhite) {
+        if (!(isWhite ? bitboard.canLongCastleWhite : bitboard.canLongCastleBlack))
+            return false;
+        boolean empty = isWhite
+                ? ((bitboard.occupancy & ((1L << 59) | (1L << 58) | (1L << 57))) == 0)
+                : ((bitboard.occupancy & ((1L << 3) | (1L << 2) | (1L << 1))) == 0);
+        return empty
+                && !bitboard.isSquareAttacked(isWhite ? 59 : 3, !isWhite)
+                && !bitboard.isSquareAttacked(isWhite ? 58 : 2, !isWhite);
+    }
 
-        long occupancy = bitboard.occupancy;
+    private static int shortCastle(boolean isWhite) {
+        return PackedMove.encode(isWhite ? 60 : 4, isWhite ? 62 : 6, isWhite ? 5 : 11, -1, -1,
+                PackedMove.SHORT_CASTLE);
+    }
 
-        if (canShortCastle) {
-            boolean empty = isWhite
-                    ? ((occupancy & ((1L << 61) | (1L << 62))) == 0)
-                    : ((occupancy & ((1L << 5) | (1L << 6))) == 0);
-            boolean safe = !bitboard.isKingInCheck(isWhite)
-                    && !bitboard.isKingInCheck(isWhite, isWhite ? 61 : 5)
-                    && !bitboard.isKingInCheck(isWhite, isWhite ? 62 : 6);
-            if (empty && safe) {
-                possibleMoves.add(new Move("0-0", isWhite));
-            }
-        }
-        if (canLongCastle) {
-            boolean empty = isWhite
-                    ? ((occupancy & ((1L << 59) | (1L << 58) | (1L << 57))) == 0)
-                    : ((occupancy & ((1L << 3) | (1L << 2) | (1L << 1))) == 0);
-            boolean safe = !bitboard.isKingInCheck(isWhite)
-                    && !bitboard.isKingInCheck(isWhite, isWhite ? 59 : 3)
-                    && !bitboard.isKingInCheck(isWhite, isWhite ? 58 : 2);
-            if (empty && safe) {
-                possibleMoves.add(new Move("0-0-0", isWhite));
-            }
-        }
-        return possibleMoves;
+    private static int longCastle(boolean isWhite) {
+        return PackedMove.encode(isWhite ? 60 : 4, isWhite ? 58 : 2, isWhite ? 5 : 11, -1, -1,
+                PackedMove.LONG_CASTLE);
     }
 }
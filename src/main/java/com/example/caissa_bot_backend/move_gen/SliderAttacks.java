@@ -0,0 +1,126 @@
+package com.example.caissa_bot_backend.move_gen;
+
+// Slow, table-free slider attack computation: the relevant occupancy masks, the
+// attack rays for a given set of blockers and every blocker subset of a mask.
+// MagicBitboards builds its tables from these, and MagicGenerator uses them to
+// search magic numbers, which must work even when MagicNumbers is broken and
+// MagicBitboards cannot initialize.
+public class SliderAttacks {
+    public static long rookRelevantOccupancy(int i) {
+        long relevantOccupancy = 0L;
+        int r = i / 8;
+        int c = i % 8;
+        for (int j = c + 1; j < 7; j++)
+            relevantOccupancy |= 1L << (8 * r + j);
+        for (int j = c - 1; j > 0; j--)
+            relevantOccupancy |= 1L << (8 * r + j);
+        for (int j = r + 1; j < 7; j++)
+            relevantOccupancy |= 1L << (8 * j + c);
+        for (int j = r - 1; j > 0; j--)
+            relevantOccupancy |= 1L << (8 * j + c);
+        return relevantOccupancy;
+    }
+
+    public static long rookAttacks(int square, long blockers) {
+        long attacks = 0L;
+        int r = square / 8, c = square % 8;
+        for (int i = r + 1; i < 8; i++) {
+            int target = 8 * i + c;
+            attacks |= 1L << target;
+            if ((blockers & (1L << target)) != 0)
+                break;
+        }
+        for (int i = r - 1; i >= 0; i--) {
+            int target = 8 * i + c;
+            attacks |= 1L << target;
+            if ((blockers & (1L << target)) != 0)
+                break;
+        }
+        for (int i = c + 1; i < 8; i++) {
+            int target = 8 * r + i;
+            attacks |= 1L << target;
+            if ((blockers & (1L << target)) != 0)
+                break;
+        }
+        for (int i = c - 1; i >= 0; i--) {
+            int target = 8 * r + i;
+            attacks |= 1L << target;
+            if ((blockers & (1L << target)) != 0)
+                break;
+        }
+        return attacks;
+    }
+
+    public static long bishopRelevantOccupancy(int i) {
+        long relevantOccupancy = 0L;
+        int r = i / 8;
+        int c = i % 8;
+        for (int j = r + 1, k = c + 1; j < 7 && k < 7; j++, k++)
+            relevantOccupancy |= 1l << (8 * j + k);
+        for (int j = r + 1, k = c - 1; j < 7 && k > 0; j++, k--)
+            relevantOccupancy |= 1l << (8 * j + k);
+        for (int j = r - 1, k = c + 1; j > 0 && k < 7; j--, k++)
+            relevantOccupancy |= 1l << (8 * j + k);
+        for (int j = r - 1, k = c - 1; j > 0 && k > 0; j--, k--)
+            relevantOccupancy |= 1l << (8 * j + k);
+        return relevantOccupancy;
+    }
+
+    public static long bishopAttacks(int square, long blockers) {
+        long attacks = 0L;
+        int r = square / 8, c = square % 8;
+        for (int i = r + 1, j = c + 1; i < 8 && j < 8; i++, j++) {
+            int target = 8 * i + j;
+            attacks |= 1L << target;
+            if ((blockers & (1L << target)) != 0)
+                break;
+        }
+        for (int i = r + 1, j = c - 1; i < 8 && j >= 0; i++, j--) {
+            int target = 8 * i + j;
+            attacks |= 1L << target;
+            if ((blockers & (1L << target)) != 0)
+                break;
+        }
+        for (int i = r - 1, j = c + 1; i >= 0 && j < 8; i--, j++) {
+            int target = 8 * i + j;
+            attacks |= 1L << target;
+            if ((blockers & (1L << target)) != 0)
+                break;
+        }
+        for (int i = r - 1, j = c - 1; i >= 0 && j >= 0; i--, j--) {
+            int target = 8 * i + j;
+            attacks |= 1L << target;
+            if ((blockers & (1L << target)) != 0)
+                break;
+        }
+        return attacks;
+    }
+
+    public static long[] blockerPermutations(long mask) {
+        int numBits = Long.bitCount(mask);
+        int permutations = 1 << numBits;
+        long[] blockers = new long[permutations];
+
+        // Get the indices of all the set bits in the mask
+        int[] bitPositions = new int[numBits];
+        int idx = 0;
+        for (int i = 0; i < 64; i++) {
+            if ((mask & (1L << i)) != 0)
+                bitPositions[idx++] = i;
+        }
+
+        for (int i = 0; i < permutations; i++) {
+            // Each i's binary representation is a possible combination of bit set based on
+            // the bitPosition
+            long blocker = 0L;
+            for (int j = 0; j < numBits; j++) {
+                if ((i & (1 << j)) != 0) {
+                    blocker |= (1L << bitPositions[j]);
+                }
+            }
+            blockers[i] = blocker;
+        }
+
+        return blockers;
+    }
+}
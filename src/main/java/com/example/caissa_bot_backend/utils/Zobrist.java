@@ -1,6 +1,5 @@
 package com.example.caissa_bot_backend.utils;
 
-import java.util.HashMap;
 import java.util.Random;
 
 import com.example.caissa_bot_backend.board_representation.Bitboard;
@@ -11,8 +10,6 @@ public class Zobrist {
     private static long[] zobristEnPassant = new long[8];
     private static long zobristWhiteToMove;
 
-    private HashMap<Long, Integer> map = new HashMap<>();
-
     static {
         int seed = 0;
         Random random = new Random(seed);
@@ -34,7 +31,7 @@ public class Zobrist {
         zobristWhiteToMove = random.nextLong();
     }
 
-    public long zobristHash(Bitboard bitboard, boolean isWhite) {
+    public static long zobristHash(Bitboard bitboard, boolean isWhite) {
         long hash = 0L;
         for (int i = 0; i < 12; i++) {
             long piece = bitboard.pieces[i];
@@ -64,17 +61,36 @@ public class Zobrist {
             hash ^= zobristWhiteToMove;
         }
 
-        map.put(hash, map.getOrDefault(hash, 0) + 1);
         return hash;
     }
 
-    public int count(Bitboard bitboard, boolean isWhite) {
-        return map.getOrDefault(zobristHash(bitboard, isWhite), 0);
+    // Key of the pawns alone, for the pawn structure cache
+    public static long pawnHash(Bitboard bitboard) {
+        long hash = 0L;
+        for (int i = 0; i < 12; i += 6) {
+            long piece = bitboard.pieces[i];
+            while (piece != 0) {
+                hash ^= zobristPiece[i][Long.numberOfTrailingZeros(piece)];
+                piece &= piece - 1;
+            }
+        }
+        return hash;
+    }
+
+    public static long pieceKey(int piece, int square) {
+        return zobristPiece[piece][square];
+    }
+
+    public static long castleKey(int castlingRights) {
+        return zobristCastle[castlingRights];
+    }
+
+    // Only the file is needed for the hash
+    public static long enPassantKey(int enPassantSquare) {
+        return zobristEnPassant[enPassantSquare % 8];
     }
 
-    public Zobrist copy() {
-        Zobrist copy = new Zobrist();
-        copy.map = new HashMap<Long, Integer>(map);
-        return copy;
+    public static long sideKey() {
+        return zobristWhiteToMove;
     }
 }